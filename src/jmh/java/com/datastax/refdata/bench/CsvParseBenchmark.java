@@ -0,0 +1,83 @@
+package com.datastax.refdata.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import au.com.bytecode.opencsv.CSVReader;
+
+import com.datastax.refdata.csv.ByteCsvReader;
+import com.datastax.refdata.csv.DateDecoder;
+import com.datastax.refdata.model.HistoricData;
+
+/**
+ * Parses a bundled daily prices file into HistoricData rows with both parsers, as DataLoader does. Run from the
+ * project directory so the csv files can be found.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CsvParseBenchmark {
+
+	@Param({ "src/main/resources/csv/AMEX_daily_prices_D.csv" })
+	public String file;
+
+	private byte[] bytes;
+	private DateDecoder dateDecoder;
+
+	@Setup
+	public void setup() throws IOException {
+		bytes = Files.readAllBytes(new File(file).toPath());
+		dateDecoder = new DateDecoder();
+	}
+
+	@Benchmark
+	public void byteCsvReader(Blackhole blackhole) throws IOException {
+		ByteCsvReader reader = new ByteCsvReader(new ByteArrayInputStream(bytes), 1, dateDecoder);
+		String exchange = null;
+		String symbol = null;
+
+		while (reader.nextRow()) {
+			if (!reader.fieldEquals(0, exchange)) {
+				exchange = reader.getString(0);
+			}
+			if (!reader.fieldEquals(1, symbol)) {
+				symbol = reader.getString(1);
+			}
+			blackhole.consume(new HistoricData(exchange, symbol, new Date(reader.getDateMillis(2)), reader
+					.getDouble(3), reader.getDouble(4), reader.getDouble(5), reader.getDouble(6), reader.getInt(7),
+					reader.getDouble(8)));
+		}
+		reader.close();
+	}
+
+	@Benchmark
+	public void openCsv(Blackhole blackhole) throws Exception {
+		CSVReader reader = new CSVReader(new InputStreamReader(new ByteArrayInputStream(bytes)),
+				CSVReader.DEFAULT_SEPARATOR, CSVReader.DEFAULT_QUOTE_CHARACTER, 1);
+		SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd");
+		String[] items;
+
+		while ((items = reader.readNext()) != null) {
+			blackhole.consume(new HistoricData(items[0].trim(), items[1].trim(), dateFormatter.parse(items[2]), Double
+					.parseDouble(items[3]), Double.parseDouble(items[4]), Double.parseDouble(items[5]), Double
+					.parseDouble(items[6]), Integer.parseInt(items[7]), Double.parseDouble(items[8])));
+		}
+		reader.close();
+	}
+}
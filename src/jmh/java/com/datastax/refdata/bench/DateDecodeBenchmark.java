@@ -0,0 +1,58 @@
+package com.datastax.refdata.bench;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.datastax.refdata.csv.DateDecoder;
+
+/**
+ * Decodes the yyyy-MM-dd column with DateDecoder and with SimpleDateFormat, cycling through a year of dates as the
+ * csv files do for each symbol.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DateDecodeBenchmark {
+
+	private String[] dates;
+	private int next;
+	private DateDecoder dateDecoder;
+	private SimpleDateFormat dateFormatter;
+
+	@Setup
+	public void setup() {
+		dateDecoder = new DateDecoder();
+		dateFormatter = new SimpleDateFormat("yyyy-MM-dd");
+		dates = new String[365];
+		for (int i = 0; i < dates.length; i++) {
+			dates[i] = dateFormatter.format(new Date(dateDecoder.parseMillis("2009-01-01") + i * 86400000L
+					+ 3600000L));
+		}
+	}
+
+	@Benchmark
+	public long dateDecoder() {
+		return dateDecoder.parseMillis(nextDate());
+	}
+
+	@Benchmark
+	public long simpleDateFormat() throws ParseException {
+		return dateFormatter.parse(nextDate()).getTime();
+	}
+
+	private String nextDate() {
+		String date = dates[next];
+		next = next + 1 == dates.length ? 0 : next + 1;
+		return date;
+	}
+}
@@ -0,0 +1,68 @@
+package com.datastax.refdata.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.datastax.refdata.DataLoader;
+import com.datastax.refdata.InMemoryReferenceDao;
+import com.datastax.refdata.model.Dividend;
+import com.datastax.refdata.model.ExchangeSymbol;
+import com.datastax.refdata.model.HistoricData;
+
+/**
+ * Write and per symbol read paths against the in process store, filled from the bundled csv files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class InMemoryStoreBenchmark {
+
+	@Param({ "src/main/resources/csv" })
+	public String csvDir;
+
+	private List<List<HistoricData>> symbols;
+	private List<ExchangeSymbol> exchangeSymbols;
+	private InMemoryReferenceDao dao;
+	private int next;
+
+	@Setup
+	public void setup() throws Exception {
+		LinkedBlockingQueue<List<HistoricData>> queueHistoricData = new LinkedBlockingQueue<List<HistoricData>>();
+		DataLoader dataLoader = new DataLoader(queueHistoricData, new LinkedBlockingQueue<List<Dividend>>());
+		dataLoader.setCsvDirectory(new File(csvDir));
+		dataLoader.startProcessingDailyPrices();
+
+		symbols = new ArrayList<List<HistoricData>>(queueHistoricData);
+		exchangeSymbols = new ArrayList<ExchangeSymbol>();
+		dao = new InMemoryReferenceDao();
+		for (List<HistoricData> list : symbols) {
+			dao.insertHistoricData(list);
+			if (!list.isEmpty()) {
+				exchangeSymbols.add(new ExchangeSymbol(list.get(0).getExchange(), list.get(0).getSymbol()));
+			}
+		}
+	}
+
+	@Benchmark
+	public int insertSymbol() {
+		List<HistoricData> list = symbols.get(next++ % symbols.size());
+		return dao.insertHistoricData(list);
+	}
+
+	@Benchmark
+	public void selectSymbol() {
+		dao.selectAllHistoricData(exchangeSymbols.get(next++ % exchangeSymbols.size()));
+	}
+}
@@ -20,11 +20,11 @@ public class Timer {
 	}
 	
 	public int getTimeTakenSeconds(){
-		return new Double(this.timeTaken / 1000).intValue();
+		return (int) (this.timeTaken / 1000);
 	}
 	
 	public String getTimeTakenMinutes(){
-		return String.format("%1$,.2f", new Double(this.timeTaken / (1000*60)));
+		return String.format("%1$,.2f", this.timeTaken / (1000d * 60));
 	}
 
 }
@@ -0,0 +1,187 @@
+package com.datastax.refdata;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Adjusts concurrency limits while a load runs, from the latency and errors of the writes it samples, so the same
+ * settings suit a small and a large cluster. Limits grow additively and shrink multiplicatively (AIMD).
+ * <p>
+ * Every period the window's mean write latency and error rate are compared against a baseline latency, the lowest
+ * window mean seen, which drifts slowly towards later windows so a cluster that gets slower for good is followed.
+ * More than 1% errors or a mean above twice the baseline shrinks every limit by 10%. Otherwise every limit that was
+ * reached during the window grows, doubling until the first decrease and by its square root after that. Limits that
+ * were not reached are left alone, they are not what holds the load back. Every change is logged. Sampling is
+ * thread-safe.
+ */
+public class AdaptiveConcurrencyController {
+
+	private static Logger logger = LoggerFactory.getLogger(AdaptiveConcurrencyController.class);
+
+	private static final double MAX_ERROR_RATE = 0.01;
+	private static final double LATENCY_TOLERANCE = 2.0;
+	private static final double BACKOFF = 0.9;
+	private static final double BASELINE_DRIFT = 0.01;
+
+	private final List<ControlledLimit> limits = new CopyOnWriteArrayList<ControlledLimit>();
+	private final AtomicLong samples = new AtomicLong(0);
+	private final AtomicLong latencyNanos = new AtomicLong(0);
+	private final AtomicLong errors = new AtomicLong(0);
+
+	// Guarded by this
+	private double baselineNanos;
+	private boolean slowStart = true;
+	private ScheduledExecutorService adjuster;
+
+	/**
+	 * Puts the limiter under control. Its current limit becomes the most it is raised to, and it starts from min.
+	 */
+	public synchronized void control(String name, InFlightLimiter limiter, int min) {
+		ControlledLimit limit = new ControlledLimit(name, limiter, Math.min(min, limiter.getLimit()),
+				limiter.getLimit());
+		limiter.setLimit(limit.min);
+		limits.add(limit);
+		logger.info("Controlling " + name + " between " + limit.min + " and " + limit.max);
+	}
+
+	/**
+	 * Records one completed write.
+	 */
+	public void onSample(long latencyNanos, boolean success) {
+		this.latencyNanos.addAndGet(latencyNanos);
+		if (!success) {
+			errors.incrementAndGet();
+		}
+		samples.incrementAndGet();
+	}
+
+	/**
+	 * Ends the current window and adjusts the limits from it, called every period once {@link #start(long)} has
+	 * been called.
+	 */
+	public synchronized void adjust() {
+		long count = samples.getAndSet(0);
+		long totalNanos = latencyNanos.getAndSet(0);
+		long failed = errors.getAndSet(0);
+
+		int[] peaks = new int[limits.size()];
+		for (int i = 0; i < peaks.length; i++) {
+			peaks[i] = limits.get(i).limiter.getAndResetPeak();
+		}
+		if (count == 0) {
+			// Nothing was written, so there is nothing to learn from
+			return;
+		}
+
+		double meanNanos = totalNanos / (double) count;
+		double errorRate = failed / (double) count;
+		if (baselineNanos == 0) {
+			baselineNanos = meanNanos;
+		}
+		boolean overloaded = errorRate > MAX_ERROR_RATE || meanNanos > LATENCY_TOLERANCE * baselineNanos;
+
+		StringBuilder changes = new StringBuilder();
+		for (int i = 0; i < peaks.length; i++) {
+			ControlledLimit limit = limits.get(i);
+			int before = limit.limiter.getLimit();
+			if (overloaded) {
+				limit.value = Math.max(limit.min, limit.value * BACKOFF);
+			} else if (peaks[i] >= before) {
+				limit.value = Math.min(limit.max, slowStart ? limit.value * 2 : limit.value + Math.sqrt(limit.value));
+			}
+
+			int after = (int) Math.round(limit.value);
+			if (after != before) {
+				limit.limiter.setLimit(after);
+				changes.append(changes.length() == 0 ? "" : ", ").append(limit.name).append(" ").append(before)
+						.append(" -> ").append(after);
+			}
+		}
+		if (overloaded) {
+			slowStart = false;
+		}
+
+		if (changes.length() > 0) {
+			logger.info((overloaded ? "Decreasing " : "Increasing ") + changes + " : mean write latency "
+					+ String.format("%.3fms", meanNanos / 1000000) + " against a baseline of "
+					+ String.format("%.3fms", baselineNanos / 1000000) + ", " + failed + " errors in " + count
+					+ " writes");
+		}
+
+		// Drops straight to a faster window, but only creeps up, or the queueing it should catch becomes the baseline
+		if (meanNanos < baselineNanos) {
+			baselineNanos = meanNanos;
+		} else {
+			baselineNanos += (meanNanos - baselineNanos) * BASELINE_DRIFT;
+		}
+	}
+
+	/**
+	 * Adjusts the limits every periodMillis on a background thread until {@link #stop()}.
+	 */
+	public synchronized void start(long periodMillis) {
+		if (adjuster != null) {
+			return;
+		}
+		adjuster = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "concurrency-controller");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		adjuster.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					adjust();
+				} catch (RuntimeException e) {
+					logger.warn("Could not adjust the concurrency limits", e);
+				}
+			}
+		}, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public synchronized void stop() {
+		if (adjuster != null) {
+			adjuster.shutdownNow();
+			adjuster = null;
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		StringBuilder description = new StringBuilder("AdaptiveConcurrencyController [");
+		for (ControlledLimit limit : limits) {
+			description.append(limit.name).append("=").append(limit.limiter.getLimit()).append(", ");
+		}
+		return description.append("baselineLatency=").append(String.format("%.3fms", baselineNanos / 1000000))
+				.append("]").toString();
+	}
+
+	private static class ControlledLimit {
+
+		private final String name;
+		private final InFlightLimiter limiter;
+		private final int min;
+		private final int max;
+		private double value;
+
+		ControlledLimit(String name, InFlightLimiter limiter, int min, int max) {
+			this.name = name;
+			this.limiter = limiter;
+			this.min = Math.max(1, min);
+			this.max = max;
+			this.value = this.min;
+		}
+	}
+}
@@ -0,0 +1,282 @@
+package com.datastax.refdata;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.refdata.metrics.Metrics;
+import com.datastax.refdata.model.Dividend;
+import com.datastax.refdata.model.ExchangeSymbol;
+import com.datastax.refdata.model.HistoricData;
+import com.datastax.refdata.model.HistoricDataQuery;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Read-through cache in front of another ReferenceDao for the latest historic data row and the last updated date of
+ * each exchange symbol. Entries are evicted least recently used once maxSize is reached, expire ttlSeconds after they
+ * were loaded and are invalidated whenever historic data for their symbol is written through this dao. Every other
+ * call goes straight to the underlying dao.
+ * <p>
+ * Invalidating does not stop a load that is already running, which may have read the value from before a write and
+ * cache it once the write has completed. Each symbol therefore has a write generation, raised as every write through
+ * this dao completes, and an entry loaded under an older generation than the current one is loaded again rather
+ * than returned.
+ */
+public class CachingReferenceDao implements ReferenceDao {
+
+	private static Logger logger = LoggerFactory.getLogger(CachingReferenceDao.class);
+
+	private final ReferenceDao dao;
+	private final LoadingCache<ExchangeSymbol, Cached<HistoricData>> latestHistoricData;
+	private final LoadingCache<ExchangeSymbol, Cached<Date>> lastUpdatedDates;
+	private final ConcurrentMap<ExchangeSymbol, AtomicLong> writeGenerations = new ConcurrentHashMap<ExchangeSymbol, AtomicLong>();
+
+	public CachingReferenceDao(final ReferenceDao dao, long maxSize, long ttlSeconds) {
+		this.dao = dao;
+
+		this.latestHistoricData = CacheBuilder.newBuilder().maximumSize(maxSize)
+				.expireAfterWrite(ttlSeconds, TimeUnit.SECONDS).recordStats()
+				.build(new CacheLoader<ExchangeSymbol, Cached<HistoricData>>() {
+					@Override
+					public Cached<HistoricData> load(ExchangeSymbol exchangeSymbol) {
+						long generation = writeGeneration(exchangeSymbol);
+						return new Cached<HistoricData>(dao.selectLatestHistoricData(exchangeSymbol), generation);
+					}
+				});
+
+		this.lastUpdatedDates = CacheBuilder.newBuilder().maximumSize(maxSize)
+				.expireAfterWrite(ttlSeconds, TimeUnit.SECONDS).recordStats()
+				.build(new CacheLoader<ExchangeSymbol, Cached<Date>>() {
+					@Override
+					public Cached<Date> load(ExchangeSymbol exchangeSymbol) {
+						long generation = writeGeneration(exchangeSymbol);
+						return new Cached<Date>(dao.selectLastUpdatedDate(exchangeSymbol), generation);
+					}
+				});
+	}
+
+	@Override
+	public HistoricData selectLatestHistoricData(ExchangeSymbol exchangeSymbol) {
+		return get(latestHistoricData, exchangeSymbol);
+	}
+
+	@Override
+	public Date selectLastUpdatedDate(ExchangeSymbol exchangeSymbol) {
+		return get(lastUpdatedDates, exchangeSymbol);
+	}
+
+	@Override
+	public Map<ExchangeSymbol, Date> selectAllLastUpdatedDates() {
+		return dao.selectAllLastUpdatedDates();
+	}
+
+	@Override
+	public int insertHistoricData(List<HistoricData> list) throws InterruptedException, ExecutionException {
+		return insertHistoricDataAsync(list).get();
+	}
+
+	@Override
+	public ListenableFuture<Integer> insertHistoricDataAsync(List<HistoricData> list) throws InterruptedException {
+		final Set<ExchangeSymbol> written = new HashSet<ExchangeSymbol>();
+		for (HistoricData historicData : list) {
+			written.add(new ExchangeSymbol(historicData.getExchange(), historicData.getSymbol()));
+		}
+
+		invalidate(written);
+		ListenableFuture<Integer> future = dao.insertHistoricDataAsync(list);
+		future.addListener(new Runnable() {
+			@Override
+			public void run() {
+				written(written);
+			}
+		}, MoreExecutors.sameThreadExecutor());
+		return future;
+	}
+
+	@Override
+	public int insertLastUpdatedDates(Map<ExchangeSymbol, Date> dates) throws InterruptedException,
+			ExecutionException {
+		lastUpdatedDates.invalidateAll(dates.keySet());
+		try {
+			return dao.insertLastUpdatedDates(dates);
+		} finally {
+			written(dates.keySet());
+		}
+	}
+
+	@Override
+	public void setMetadataAggregator(MetadataAggregator aggregator) {
+		dao.setMetadataAggregator(aggregator);
+	}
+
+	@Override
+	public void setConcurrencyController(AdaptiveConcurrencyController controller) {
+		dao.setConcurrencyController(controller);
+	}
+
+	private void invalidate(Set<ExchangeSymbol> exchangeSymbols) {
+		latestHistoricData.invalidateAll(exchangeSymbols);
+		lastUpdatedDates.invalidateAll(exchangeSymbols);
+	}
+
+	/**
+	 * Called once a write has completed, succeeded or not. Entries loaded before now are never returned again.
+	 */
+	private void written(Set<ExchangeSymbol> exchangeSymbols) {
+		for (ExchangeSymbol exchangeSymbol : exchangeSymbols) {
+			AtomicLong generation = writeGenerations.get(exchangeSymbol);
+			if (generation == null) {
+				AtomicLong created = new AtomicLong(0);
+				generation = writeGenerations.putIfAbsent(exchangeSymbol, created);
+				if (generation == null) {
+					generation = created;
+				}
+			}
+			generation.incrementAndGet();
+		}
+		invalidate(exchangeSymbols);
+	}
+
+	private long writeGeneration(ExchangeSymbol exchangeSymbol) {
+		AtomicLong generation = writeGenerations.get(exchangeSymbol);
+		return generation == null ? 0 : generation.get();
+	}
+
+	private <T> T get(LoadingCache<ExchangeSymbol, Cached<T>> cache, ExchangeSymbol exchangeSymbol) {
+		while (true) {
+			Cached<T> cached = cache.getUnchecked(exchangeSymbol);
+			if (cached.generation == writeGeneration(exchangeSymbol)) {
+				return cached.value;
+			}
+			// Loaded before a write to the symbol completed, so it may hold the value from before the write
+			cache.asMap().remove(exchangeSymbol, cached);
+		}
+	}
+
+	public CacheStats getLatestHistoricDataStats() {
+		return latestHistoricData.stats();
+	}
+
+	public CacheStats getLastUpdatedDateStats() {
+		return lastUpdatedDates.stats();
+	}
+
+	@Override
+	public int insertDividend(List<Dividend> list) throws InterruptedException, ExecutionException {
+		return dao.insertDividend(list);
+	}
+
+	@Override
+	public ListenableFuture<Integer> insertDividendAsync(List<Dividend> list) throws InterruptedException {
+		return dao.insertDividendAsync(list);
+	}
+
+	@Override
+	public void selectAllHistoricData(int fetchSize) {
+		dao.selectAllHistoricData(fetchSize);
+	}
+
+	@Override
+	public List<ScanRange> scanHistoricData(int splits, int concurrency, int fetchSize, HistoricDataConsumer consumer)
+			throws InterruptedException, ExecutionException {
+		return dao.scanHistoricData(splits, concurrency, fetchSize, consumer);
+	}
+
+	@Override
+	public void selectAllHistoricData(ExchangeSymbol exchangeSymbol) {
+		dao.selectAllHistoricData(exchangeSymbol);
+	}
+
+	@Override
+	public ListenableFuture<Integer> selectAllHistoricData(List<ExchangeSymbol> exchangeSymbols, int maxConcurrent,
+			HistoricDataHandler handler) throws InterruptedException {
+		return dao.selectAllHistoricData(exchangeSymbols, maxConcurrent, handler);
+	}
+
+	@Override
+	public Iterator<HistoricData> selectHistoricData(HistoricDataQuery query) {
+		return dao.selectHistoricData(query);
+	}
+
+	@Override
+	public long getTotalPoints() {
+		return dao.getTotalPoints();
+	}
+
+	@Override
+	public long getTotalDividends() {
+		return dao.getTotalDividends();
+	}
+
+	@Override
+	public long getFailedWrites() {
+		return dao.getFailedWrites();
+	}
+
+	@Override
+	public long getWriteRequests() {
+		return dao.getWriteRequests();
+	}
+
+	@Override
+	public long getHistoricWriteRequests() {
+		return dao.getHistoricWriteRequests();
+	}
+
+	@Override
+	public int getWritesInFlight() {
+		return dao.getWritesInFlight();
+	}
+
+	@Override
+	public int getRequestCount() {
+		return dao.getRequestCount();
+	}
+
+	@Override
+	public Metrics getMetrics() {
+		return dao.getMetrics();
+	}
+
+	@Override
+	public void close() {
+		logger.info("Latest historic data cache : " + describe(latestHistoricData.stats()));
+		logger.info("Last updated date cache : " + describe(lastUpdatedDates.stats()));
+		dao.close();
+	}
+
+	/**
+	 * A loaded value, null when the symbol has none, and the write generation of its symbol when the load started.
+	 */
+	private static class Cached<T> {
+		private final T value;
+		private final long generation;
+
+		Cached(T value, long generation) {
+			this.value = value;
+			this.generation = generation;
+		}
+	}
+
+	private static String describe(CacheStats stats) {
+		return stats.hitCount() + " hits, " + stats.missCount() + " misses ("
+				+ String.format("%.1f", stats.hitRate() * 100) + "% hit rate), " + stats.evictionCount()
+				+ " evictions, average load " + String.format("%.3f", stats.averageLoadPenalty() / 1e6) + "ms";
+	}
+}
@@ -0,0 +1,763 @@
+package com.datastax.refdata;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.policies.DCAwareRoundRobinPolicy;
+import com.datastax.driver.core.policies.TokenAwarePolicy;
+import com.datastax.refdata.metrics.Metrics;
+import com.datastax.refdata.metrics.OperationMetrics;
+import com.datastax.refdata.model.Dividend;
+import com.datastax.refdata.model.ExchangeSymbol;
+import com.datastax.refdata.model.HistoricData;
+import com.datastax.refdata.model.HistoricDataColumn;
+import com.datastax.refdata.model.HistoricDataQuery;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+public class CassandraReferenceDao implements ReferenceDao {
+	
+	private static Logger logger = LoggerFactory.getLogger(CassandraReferenceDao.class);
+
+	private AtomicLong TOTAL_POINTS = new AtomicLong(0);
+	private AtomicLong TOTAL_DIVIDENDS = new AtomicLong(0);
+	private Cluster cluster;
+	private Session session;
+	private static String keyspaceName = "datastax_referencedata_demo";
+	private static String tableNameHistoric = keyspaceName + ".historic_data";
+	private static String tableNameDividends = keyspaceName + ".dividends";
+	private static String tableNameMetaData = keyspaceName + ".exchange_metadata";
+
+	private static final String INSERT_INTO_HISTORIC = "Insert into " + tableNameHistoric
+			+ " (exchange,symbol,date,open,high,low,close,volume,adj_close) values (?,?,?,?,?,?,?,?,?);";
+	private static final String INSERT_INTO_DIVIDENDS = "Insert into " + tableNameDividends
+			+ " (exchange,symbol,date,dividend) values (?,?,?,?);";
+	private static final String INSERT_INTO_METADATA = "Insert into " + tableNameMetaData
+			+ " (exchange,symbol,last_updated_date) values (?,?,?);";
+	
+	
+	private static final String SELECT_LAST_UPDATED = "select last_updated_date from " + tableNameMetaData
+			+ " where exchange=? and symbol=?";
+	private static final String SELECT_ALL_LAST_UPDATED = "select exchange, symbol, last_updated_date from "
+			+ tableNameMetaData;
+	private static final String SELECT_ALL = "select * from " + tableNameHistoric;
+	private static final String SELECT_TOKEN_RANGE = "select * from " + tableNameHistoric
+			+ " where token(exchange,symbol) > ? and token(exchange,symbol) <= ?";
+	private static final String SELECT_ALL_BY_KEY = "select * from " + tableNameHistoric + " where exchange=? and symbol=? and date > '2009-10-29'";
+
+	private PreparedStatement insertStmtHistoric;
+	private PreparedStatement insertStmtDividend;
+	private PreparedStatement insertStmtMetaData;
+	private PreparedStatement selectStmtByKey;
+	private PreparedStatement selectStmtLastUpdated;
+	private PreparedStatement selectStmtTokenRange;
+	
+	private static final int MAX_IDLE_STATEMENTS = 8192;
+	private StatementPool historicPool;
+	private StatementPool dividendPool;
+	private StatementPool metaDataPool;
+	private StatementPool selectByKeyPool;
+
+	private AtomicInteger requestCount = new AtomicInteger(0);
+	private AtomicLong failedWrites = new AtomicLong(0);
+	
+	private static final int DEFAULT_MAX_IN_FLIGHT = 1024;
+	private static final int MIN_ADAPTIVE_IN_FLIGHT = 16;
+	private final InFlightLimiter writeLimiter;
+	private AtomicLong writeRequests = new AtomicLong(0);
+	private AtomicLong historicWriteRequests = new AtomicLong(0);
+	private volatile MetadataAggregator aggregator;
+	private volatile AdaptiveConcurrencyController controller;
+	
+	private final Metrics metrics = new Metrics();
+	private final OperationMetrics insertMetrics = metrics.get(Metrics.INSERT);
+	private final OperationMetrics insertMetaDataMetrics = metrics.get(Metrics.INSERT_METADATA);
+	private final OperationMetrics readMetrics = metrics.get(Metrics.READ);
+	private final OperationMetrics rangeReadMetrics = metrics.get(Metrics.RANGE_READ);
+	private final OperationMetrics scanMetrics = metrics.get(Metrics.SCAN);
+	
+	// Prepared range queries, keyed by their cql, one per combination of bounds, limit and columns
+	private final ConcurrentMap<String, PreparedStatement> rangeQueries = new ConcurrentHashMap<String, PreparedStatement>();
+	
+	// Rough serialized size of the fixed width columns of a row, used to cap batch sizes.
+	private static final int HISTORIC_ROW_BYTES = 8 * 7 + 4;
+	private static final int DIVIDEND_ROW_BYTES = 8 * 2;
+	private int batchRows = 1;
+	private int batchBytes = 5 * 1024;
+
+	public CassandraReferenceDao(String[] contactPoints) {
+		this(contactPoints, DEFAULT_MAX_IN_FLIGHT);
+	}
+
+	/**
+	 * @param maxInFlight the maximum number of writes this dao keeps in flight, across all writer threads.
+	 */
+	public CassandraReferenceDao(String[] contactPoints, int maxInFlight) {
+
+		this.writeLimiter = new InFlightLimiter(maxInFlight);
+		
+		// Token aware routing sends each partition read or write straight to a replica
+		this.cluster = Cluster.builder().addContactPoints(contactPoints)
+				.withLoadBalancingPolicy(new TokenAwarePolicy(new DCAwareRoundRobinPolicy())).build();
+		this.session = cluster.connect();
+
+		this.insertStmtHistoric = session.prepare(INSERT_INTO_HISTORIC);
+		this.insertStmtDividend = session.prepare(INSERT_INTO_DIVIDENDS);
+		this.insertStmtMetaData = session.prepare(INSERT_INTO_METADATA);
+		this.selectStmtByKey = session.prepare(SELECT_ALL_BY_KEY);
+		this.selectStmtLastUpdated = session.prepare(SELECT_LAST_UPDATED);
+		this.selectStmtTokenRange = session.prepare(SELECT_TOKEN_RANGE);
+		
+		this.insertStmtHistoric.setConsistencyLevel(ConsistencyLevel.ONE);
+		this.insertStmtDividend.setConsistencyLevel(ConsistencyLevel.ONE);
+		this.insertStmtMetaData.setConsistencyLevel(ConsistencyLevel.ONE);
+		
+		this.historicPool = new StatementPool(insertStmtHistoric, MAX_IDLE_STATEMENTS);
+		this.dividendPool = new StatementPool(insertStmtDividend, MAX_IDLE_STATEMENTS);
+		this.metaDataPool = new StatementPool(insertStmtMetaData, MAX_IDLE_STATEMENTS);
+		this.selectByKeyPool = new StatementPool(selectStmtByKey, MAX_IDLE_STATEMENTS);
+	}
+
+	/**
+	 * Writes each partition's rows as UNLOGGED batches of at most batchRows rows and roughly batchBytes bytes. Rows
+	 * of different partitions never share a batch. A batchRows of 1 writes every row as its own request.
+	 */
+	public void setBatching(int batchRows, int batchBytes) {
+		this.batchRows = Math.max(1, batchRows);
+		this.batchBytes = Math.max(1, batchBytes);
+	}
+	
+	@Override
+	public int insertHistoricData(List<HistoricData> list) throws InterruptedException, ExecutionException {
+		return insertHistoricDataAsync(list).get();
+	}
+
+	@Override
+	public ListenableFuture<Integer> insertHistoricDataAsync(List<HistoricData> list) throws InterruptedException {
+		PartitionBatcher batcher = new PartitionBatcher(historicPool);
+
+		HistoricData mostRecent = null;
+		
+		for (HistoricData historicData : list) {
+
+			BoundStatement boundStmt = historicPool.borrow();
+			boundStmt.setString(0, historicData.getExchange());
+			boundStmt.setString(1, historicData.getSymbol());
+			boundStmt.setDate(2, historicData.getDate());
+			boundStmt.setDouble(3, historicData.getOpen());
+			boundStmt.setDouble(4, historicData.getHigh());
+			boundStmt.setDouble(5, historicData.getLow());
+			boundStmt.setDouble(6, historicData.getClose());
+			boundStmt.setInt(7, historicData.getVolume());
+			boundStmt.setDouble(8, historicData.getAdjClose());
+
+			batcher.add(historicData.getExchange(), historicData.getSymbol(), boundStmt, HISTORIC_ROW_BYTES);
+			
+			// Rows before 1970 count too, the list may hold nothing more recent
+			if (mostRecent == null || historicData.getDate().after(mostRecent.getDate())){				
+				mostRecent = historicData;
+			}
+						
+			TOTAL_POINTS.incrementAndGet();			
+		}
+		batcher.flush();
+		List<ResultSetFuture> results = batcher.getResults();
+		historicWriteRequests.addAndGet(results.size());
+
+		//Insert most recent date, unless the aggregator writes it at the end of the load
+		final MetadataAggregator aggregator = this.aggregator;
+		if (mostRecent != null && aggregator != null) {
+			// Only handed over once every row has been written, so a flush never saves a date for rows that failed
+			// or are still in flight. The returned future completes after the update.
+			final ExchangeSymbol exchangeSymbol = new ExchangeSymbol(mostRecent.getExchange(), mostRecent.getSymbol());
+			final long date = mostRecent.getDate().getTime();
+			return Futures.transform(whenAllComplete(results), new Function<Integer, Integer>() {
+				@Override
+				public Integer apply(Integer failures) {
+					if (failures == 0) {
+						aggregator.update(exchangeSymbol, date);
+					}
+					return failures;
+				}
+			});
+		} else if (mostRecent != null){
+			BoundStatement boundMetaDataStmt = metaDataPool.borrow();
+			boundMetaDataStmt.setString(0, mostRecent.getExchange());
+			boundMetaDataStmt.setString(1, mostRecent.getSymbol());
+			boundMetaDataStmt.setDate(2, mostRecent.getDate());
+			results.add(metaDataPool.releaseOnCompletion(executeWrite(boundMetaDataStmt, insertMetaDataMetrics, 1),
+					boundMetaDataStmt));
+		}
+		
+		return whenAllComplete(results);
+	}
+	
+	@Override
+	public int insertLastUpdatedDates(Map<ExchangeSymbol, Date> lastUpdatedDates) throws InterruptedException,
+			ExecutionException {
+		List<ResultSetFuture> results = new ArrayList<ResultSetFuture>(lastUpdatedDates.size());
+		
+		for (Map.Entry<ExchangeSymbol, Date> entry : lastUpdatedDates.entrySet()) {
+			BoundStatement boundMetaDataStmt = metaDataPool.borrow();
+			boundMetaDataStmt.setString(0, entry.getKey().getExchange());
+			boundMetaDataStmt.setString(1, entry.getKey().getSymbol());
+			boundMetaDataStmt.setDate(2, entry.getValue());
+			results.add(metaDataPool.releaseOnCompletion(executeWrite(boundMetaDataStmt, insertMetaDataMetrics, 1),
+					boundMetaDataStmt));
+		}
+		return whenAllComplete(results).get();
+	}
+	
+	@Override
+	public void setMetadataAggregator(MetadataAggregator aggregator) {
+		this.aggregator = aggregator;
+	}
+	
+	@Override
+	public void setConcurrencyController(AdaptiveConcurrencyController controller) {
+		this.controller = controller;
+		if (controller != null) {
+			controller.control("in flight writes", writeLimiter, MIN_ADAPTIVE_IN_FLIGHT);
+		}
+	}
+	
+	@Override
+	public int insertDividend(List<Dividend> list) throws InterruptedException, ExecutionException {
+		return insertDividendAsync(list).get();
+	}
+
+	@Override
+	public ListenableFuture<Integer> insertDividendAsync(List<Dividend> list) throws InterruptedException {
+		PartitionBatcher batcher = new PartitionBatcher(dividendPool);
+
+		for (Dividend dividend: list) {
+
+			BoundStatement boundStmt = dividendPool.borrow();
+			boundStmt.setString(0, dividend.getExchange());
+			boundStmt.setString(1, dividend.getSymbol());
+			boundStmt.setDate(2, dividend.getDate());
+			boundStmt.setDouble(3, dividend.getDividend());
+
+			batcher.add(dividend.getExchange(), dividend.getSymbol(), boundStmt, DIVIDEND_ROW_BYTES);
+			
+			TOTAL_DIVIDENDS.incrementAndGet();
+		}
+		batcher.flush();
+
+		return whenAllComplete(batcher.getResults());
+	}
+	
+	/**
+	 * Collects statements into single partition UNLOGGED batches, sending a batch when the partition changes or the
+	 * row or byte cap would be exceeded. Without batching every statement is sent as soon as it is added. Statements
+	 * go back to their pool once the request carrying them has completed.
+	 */
+	private class PartitionBatcher {
+		private final StatementPool pool;
+		private final List<ResultSetFuture> results = new ArrayList<ResultSetFuture>();
+		private BatchStatement batch;
+		private List<BoundStatement> batched;
+		private String exchange;
+		private String symbol;
+		private int bytes;
+
+		PartitionBatcher(StatementPool pool) {
+			this.pool = pool;
+		}
+
+		void add(String exchange, String symbol, BoundStatement statement, int fixedBytes) throws InterruptedException {
+			if (batchRows == 1) {
+				results.add(pool.releaseOnCompletion(executeWrite(statement, insertMetrics, 1), statement));
+				return;
+			}
+			
+			int rowBytes = fixedBytes + exchange.length() + symbol.length();
+			
+			if (batch != null && (batch.size() >= batchRows || bytes + rowBytes > batchBytes
+					|| !exchange.equals(this.exchange) || !symbol.equals(this.symbol))) {
+				flush();
+			}
+			if (batch == null) {
+				batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+				batch.setConsistencyLevel(ConsistencyLevel.ONE);
+				batched = new ArrayList<BoundStatement>(batchRows);
+				this.exchange = exchange;
+				this.symbol = symbol;
+				bytes = 0;
+			}
+			batch.add(statement);
+			batched.add(statement);
+			bytes += rowBytes;
+		}
+
+		void flush() throws InterruptedException {
+			if (batch != null) {
+				results.add(pool.releaseOnCompletion(executeWrite(batch, insertMetrics, batched.size()), batched));
+				batch = null;
+				batched = null;
+			}
+		}
+
+		List<ResultSetFuture> getResults() {
+			return results;
+		}
+	}
+
+	/**
+	 * Executes a write once a permit is available, the permit is released and the latency recorded when the write
+	 * completes.
+	 */
+	private ResultSetFuture executeWrite(Statement statement, final OperationMetrics operation, final int rows)
+			throws InterruptedException {
+		writeLimiter.acquire();
+		writeRequests.incrementAndGet();
+		final long start = operation.start();
+		
+		ResultSetFuture future;
+		try {
+			future = session.executeAsync(statement);
+		} catch (RuntimeException e) {
+			operation.end(start, rows, false);
+			writeLimiter.release();
+			throw e;
+		}
+		
+		Futures.addCallback(future, new FutureCallback<ResultSet>() {
+			@Override
+			public void onSuccess(ResultSet result) {
+				completed(true);
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				completed(false);
+			}
+
+			private void completed(boolean success) {
+				operation.end(start, rows, success);
+				writeLimiter.release();
+				AdaptiveConcurrencyController controller = CassandraReferenceDao.this.controller;
+				if (controller != null) {
+					controller.onSample(System.nanoTime() - start, success);
+				}
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Completes once all the futures have completed, counting and logging the ones that failed instead of
+	 * failing the whole batch.
+	 */
+	private ListenableFuture<Integer> whenAllComplete(List<ResultSetFuture> results) {
+		final SettableFuture<Integer> completion = SettableFuture.create();
+		
+		if (results.isEmpty()) {
+			completion.set(0);
+			return completion;
+		}
+		
+		final AtomicInteger remaining = new AtomicInteger(results.size());
+		final AtomicInteger failures = new AtomicInteger(0);
+		
+		FutureCallback<ResultSet> callback = new FutureCallback<ResultSet>() {
+			@Override
+			public void onSuccess(ResultSet result) {
+				complete();
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				failures.incrementAndGet();
+				failedWrites.incrementAndGet();
+				logger.warn("Write failed : " + t.getMessage());
+				complete();
+			}
+
+			private void complete() {
+				if (remaining.decrementAndGet() == 0) {
+					completion.set(failures.get());
+				}
+			}
+		};
+		
+		for (ResultSetFuture result : results) {
+			Futures.addCallback(result, callback);
+		}
+		return completion;
+	}
+	
+	@Override
+	public void selectAllHistoricData(int fetchSize){
+		Statement stmt = new SimpleStatement(SELECT_ALL);
+		stmt.setFetchSize(fetchSize);
+		ResultSet rs = session.execute(stmt);
+		
+		Iterator<Row> iterator = rs.iterator();
+		
+		while (iterator.hasNext()){
+			iterator.next().getDouble("close");
+		}		
+	}
+	
+	@Override
+	public List<ScanRange> scanHistoricData(int splits, int concurrency, final int fetchSize,
+			final HistoricDataConsumer consumer) throws InterruptedException, ExecutionException {
+		
+		// Each range is paged through on its own pool thread, so a slow range only holds up one thread
+		return new ParallelScan() {
+			@Override
+			protected long scan(ScanRange range) {
+				requestCount.incrementAndGet();
+				BoundStatement bound = selectStmtTokenRange.bind(range.getStart(), range.getEnd());
+				bound.setFetchSize(fetchSize);
+				
+				long start = scanMetrics.start();
+				int rows = 0;
+				try {
+					for (Row row : session.execute(bound)) {
+						consumer.accept(toHistoricData(row));
+						rows++;
+					}
+				} catch (RuntimeException e) {
+					scanMetrics.end(start, rows, false);
+					throw e;
+				}
+				scanMetrics.end(start, rows, true);
+				return rows;
+			}
+		}.run(ScanRange.split(splits), concurrency);
+	}
+	
+	@Override
+	public long getTotalPoints(){
+		return TOTAL_POINTS.get();
+	}
+	
+	@Override
+	public long getTotalDividends(){
+		return TOTAL_DIVIDENDS.get();
+	}
+	
+	@Override
+	public long getFailedWrites(){
+		return failedWrites.get();
+	}
+	
+	@Override
+	public long getWriteRequests(){
+		return writeRequests.get();
+	}
+
+	@Override
+	public long getHistoricWriteRequests(){
+		return historicWriteRequests.get();
+	}
+	
+	@Override
+	public int getWritesInFlight(){
+		return writeLimiter.getInFlight();
+	}
+	
+	@Override
+	public int getRequestCount(){
+		return this.requestCount.get();
+	}
+
+	@Override
+	public void selectAllHistoricData(ExchangeSymbol exchangeSymbol) {
+		requestCount.incrementAndGet(); 
+		
+		BoundStatement bound = selectByKeyPool.borrow();
+		bound.setString(0, exchangeSymbol.getExchange());
+		bound.setString(1, exchangeSymbol.getSymbol());
+		
+		long start = readMetrics.start();
+		int rows = 0;
+		boolean success = false;
+		
+		ResultSetFuture results = session.executeAsync(bound); 
+		
+		try {
+			for (Row row : results.getUninterruptibly()) {			
+				row.getString("symbol");			
+				rows++;
+			}
+			success = true;
+		} finally {
+			readMetrics.end(start, rows, success);
+			
+			// Paging fetches further pages with the same statement, only recycle it once the result set is done with.
+			selectByKeyPool.release(bound);
+		}
+	}
+
+	@Override
+	public ListenableFuture<Integer> selectAllHistoricData(List<ExchangeSymbol> exchangeSymbols, int maxConcurrent,
+			final HistoricDataHandler handler) throws InterruptedException {
+		final InFlightLimiter readLimiter = new InFlightLimiter(maxConcurrent);
+		List<ListenableFuture<ResultSet>> results = new ArrayList<ListenableFuture<ResultSet>>();
+		
+		for (final ExchangeSymbol exchangeSymbol : exchangeSymbols) {
+			requestCount.incrementAndGet();
+			
+			// Paging is off, further pages would have to be fetched from the driver's I/O threads
+			final BoundStatement bound = selectByKeyPool.borrow();
+			bound.setString(0, exchangeSymbol.getExchange());
+			bound.setString(1, exchangeSymbol.getSymbol());
+			bound.setFetchSize(Integer.MAX_VALUE);
+			
+			readLimiter.acquire();
+			final long start = readMetrics.start();
+			ResultSetFuture future;
+			try {
+				future = session.executeAsync(bound);
+			} catch (RuntimeException e) {
+				readMetrics.end(start, 0, false);
+				readLimiter.release();
+				throw e;
+			}
+			
+			Futures.addCallback(future, new FutureCallback<ResultSet>() {
+				@Override
+				public void onSuccess(ResultSet resultSet) {
+					List<HistoricData> rows = new ArrayList<HistoricData>(resultSet.getAvailableWithoutFetching());
+					for (Row row : resultSet) {
+						rows.add(toHistoricData(row));
+					}
+					complete(start, rows.size(), true);
+					handler.onResult(exchangeSymbol, rows);
+				}
+
+				@Override
+				public void onFailure(Throwable t) {
+					complete(start, 0, false);
+					handler.onFailure(exchangeSymbol, t);
+				}
+				
+				private void complete(long start, int rows, boolean success) {
+					readMetrics.end(start, rows, success);
+					bound.setFetchSize(0);
+					selectByKeyPool.release(bound);
+					readLimiter.release();
+				}
+			});
+			results.add(future);
+		}
+		
+		return Futures.transform(Futures.successfulAsList(results), new Function<List<ResultSet>, Integer>() {
+			@Override
+			public Integer apply(List<ResultSet> resultSets) {
+				int failures = 0;
+				for (ResultSet resultSet : resultSets) {
+					if (resultSet == null) {
+						failures++;
+					}
+				}
+				return failures;
+			}
+		});
+	}
+	
+	@Override
+	public Iterator<HistoricData> selectHistoricData(final HistoricDataQuery query) {
+		requestCount.incrementAndGet();
+		
+		StringBuilder cql = new StringBuilder("select exchange,symbol,date");
+		for (HistoricDataColumn column : query.getColumns()) {
+			cql.append(',').append(column.getColumnName());
+		}
+		cql.append(" from ").append(tableNameHistoric).append(" where exchange=? and symbol=?");
+		
+		List<Object> values = new ArrayList<Object>();
+		values.add(query.getExchangeSymbol().getExchange());
+		values.add(query.getExchangeSymbol().getSymbol());
+		
+		if (query.getFrom() != null) {
+			cql.append(" and date >= ?");
+			values.add(query.getFrom());
+		}
+		if (query.getTo() != null) {
+			cql.append(" and date < ?");
+			values.add(query.getTo());
+		}
+		if (query.getLimit() > 0) {
+			cql.append(" limit ?");
+			values.add(query.getLimit());
+		}
+		
+		BoundStatement bound = prepareRangeQuery(cql.toString()).bind(values.toArray());
+		bound.setFetchSize(query.getFetchSize());
+		
+		long start = rangeReadMetrics.start();
+		final ResultSet resultSet;
+		try {
+			resultSet = session.execute(bound);
+		} catch (RuntimeException e) {
+			rangeReadMetrics.end(start, 0, false);
+			throw e;
+		}
+		rangeReadMetrics.end(start, resultSet.getAvailableWithoutFetching(), true);
+		
+		final Iterator<Row> rows = resultSet.iterator();
+		final int prefetchAt = Math.max(1, query.getFetchSize() / 2);
+		
+		return new Iterator<HistoricData>() {
+			@Override
+			public boolean hasNext() {
+				// Fetch the next page in the background while the current one is consumed
+				if (resultSet.getAvailableWithoutFetching() == prefetchAt && !resultSet.isFullyFetched()) {
+					resultSet.fetchMoreResults();
+				}
+				return rows.hasNext();
+			}
+
+			@Override
+			public HistoricData next() {
+				return toHistoricData(rows.next(), query.getColumns());
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+	
+	@Override
+	public HistoricData selectLatestHistoricData(ExchangeSymbol exchangeSymbol) {
+		Iterator<HistoricData> iterator = selectHistoricData(new HistoricDataQuery(exchangeSymbol).withLimit(1));
+		return iterator.hasNext() ? iterator.next() : null;
+	}
+	
+	@Override
+	public Date selectLastUpdatedDate(ExchangeSymbol exchangeSymbol) {
+		requestCount.incrementAndGet();
+		long start = readMetrics.start();
+		
+		Row row;
+		try {
+			row = session.execute(selectStmtLastUpdated.bind(exchangeSymbol.getExchange(), exchangeSymbol.getSymbol()))
+					.one();
+		} catch (RuntimeException e) {
+			readMetrics.end(start, 0, false);
+			throw e;
+		}
+		readMetrics.end(start, row == null ? 0 : 1, true);
+		return row == null ? null : row.getDate(0);
+	}
+	
+	@Override
+	public Map<ExchangeSymbol, Date> selectAllLastUpdatedDates() {
+		requestCount.incrementAndGet();
+		long start = readMetrics.start();
+		
+		Statement stmt = new SimpleStatement(SELECT_ALL_LAST_UPDATED);
+		stmt.setFetchSize(5000);
+		Map<ExchangeSymbol, Date> lastUpdated = new HashMap<ExchangeSymbol, Date>();
+		try {
+			for (Row row : session.execute(stmt)) {
+				lastUpdated.put(new ExchangeSymbol(row.getString(0), row.getString(1)), row.getDate(2));
+			}
+		} catch (RuntimeException e) {
+			readMetrics.end(start, lastUpdated.size(), false);
+			throw e;
+		}
+		readMetrics.end(start, lastUpdated.size(), true);
+		return lastUpdated;
+	}
+	
+	private PreparedStatement prepareRangeQuery(String cql) {
+		PreparedStatement prepared = rangeQueries.get(cql);
+		if (prepared == null) {
+			prepared = session.prepare(cql);
+			PreparedStatement existing = rangeQueries.putIfAbsent(cql, prepared);
+			if (existing != null) {
+				prepared = existing;
+			}
+		}
+		return prepared;
+	}
+	
+	/**
+	 * Maps a select * row.
+	 */
+	private static HistoricData toHistoricData(Row row) {
+		return new HistoricData(row.getString("exchange"), row.getString("symbol"), row.getDate("date"),
+				row.getDouble("open"), row.getDouble("high"), row.getDouble("low"), row.getDouble("close"),
+				row.getInt("volume"), row.getDouble("adj_close"));
+	}
+	
+	/**
+	 * Maps a row selected as exchange, symbol, date and then the columns in their declared order.
+	 */
+	private static HistoricData toHistoricData(Row row, Set<HistoricDataColumn> columns) {
+		double open = Double.NaN, high = Double.NaN, low = Double.NaN, close = Double.NaN, adjClose = Double.NaN;
+		int volume = 0;
+		
+		int index = 3;
+		for (HistoricDataColumn column : columns) {
+			switch (column) {
+			case OPEN:
+				open = row.getDouble(index);
+				break;
+			case HIGH:
+				high = row.getDouble(index);
+				break;
+			case LOW:
+				low = row.getDouble(index);
+				break;
+			case CLOSE:
+				close = row.getDouble(index);
+				break;
+			case VOLUME:
+				volume = row.getInt(index);
+				break;
+			case ADJ_CLOSE:
+				adjClose = row.getDouble(index);
+				break;
+			}
+			index++;
+		}
+		return new HistoricData(row.getString(0), row.getString(1), row.getDate(2), open, high, low, close, volume,
+				adjClose);
+	}
+
+	@Override
+	public Metrics getMetrics() {
+		return metrics;
+	}
+
+	@Override
+	public void close() {
+		session.close();
+		cluster.close();
+	}
+}
@@ -2,80 +2,499 @@ package com.datastax.refdata;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import au.com.bytecode.opencsv.CSVReader;
 
+import com.datastax.refdata.csv.ByteBufferInputStream;
+import com.datastax.refdata.csv.ByteCsvReader;
+import com.datastax.refdata.csv.CsvChunker;
+import com.datastax.refdata.csv.CsvChunker.Chunk;
+import com.datastax.refdata.csv.DateDecoder;
 import com.datastax.refdata.model.Dividend;
 import com.datastax.refdata.model.ExchangeSymbol;
 import com.datastax.refdata.model.HistoricData;
+import com.datastax.refdata.model.HistoricSeries;
+import com.datastax.refdata.snapshot.SnapshotReader;
 
 public class DataLoader {
 
 	private static Logger logger = LoggerFactory.getLogger(DataLoader.class);
-	private DateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd");
+	private final DateDecoder dateDecoder = new DateDecoder();
 
 	private static final CharSequence DAILY_PRICES = "daily_prices";
 	private static final CharSequence DIVIDENDS = "dividends";
 
+	public static final String PARSER_FAST = "fast";
+	public static final String PARSER_OPENCSV = "opencsv";
+
+	public static final String READ_MODE_STREAM = "stream";
+	public static final String READ_MODE_MAPPED = "mapped";
+
+	private static final String DEFAULT_CSV_DIRECTORY = "src/main/resources/csv";
+	private static final long DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
 	private BlockingQueue<List<HistoricData>> queueHistoricData;
 	private BlockingQueue<List<Dividend>> queueDividend;
+	private int parserThreads;
+	private int dividendParserThreads = 1;
+	private boolean useOpenCsv = false;
+	private boolean useMappedFiles = false;
+	private long chunkSize = DEFAULT_CHUNK_SIZE;
+	private File csvDirectory = new File(".", DEFAULT_CSV_DIRECTORY);
+	private Map<ExchangeSymbol, Date> lastUpdatedDates;
+	private File snapshotFile;
+	private final AtomicLong skippedRows = new AtomicLong(0);
+	private final AtomicLong queuedLists = new AtomicLong(0);
+	private final AtomicInteger failedSources = new AtomicInteger(0);
+	private volatile Exception failure;
 
 	public DataLoader(BlockingQueue<List<HistoricData>> queueHistoricData, BlockingQueue<List<Dividend>> queueDividend) {
+		this(queueHistoricData, queueDividend, 1);
+	}
+
+	public DataLoader(BlockingQueue<List<HistoricData>> queueHistoricData, BlockingQueue<List<Dividend>> queueDividend,
+			int parserThreads) {
 		this.queueHistoricData = queueHistoricData;
 		this.queueDividend = queueDividend;
+		this.parserThreads = Math.max(1, parserThreads);
+	}
+
+	/**
+	 * Selects the csv parser, either {@link #PARSER_FAST} (default) or {@link #PARSER_OPENCSV}.
+	 */
+	public void setCsvParser(String csvParser) {
+		this.useOpenCsv = PARSER_OPENCSV.equalsIgnoreCase(csvParser);
+	}
+
+	/**
+	 * Selects how the fast parser reads files, either {@link #READ_MODE_STREAM} (default) or
+	 * {@link #READ_MODE_MAPPED}. In mapped mode every file is split into symbol aligned chunks of about chunkSize
+	 * bytes which are memory mapped and parsed as separate tasks.
+	 */
+	public void setReadMode(String readMode, long chunkSize) {
+		this.useMappedFiles = READ_MODE_MAPPED.equalsIgnoreCase(readMode);
+		this.chunkSize = Math.max(1, chunkSize);
+	}
+
+	public void setCsvDirectory(File csvDirectory) {
+		this.csvDirectory = csvDirectory;
+	}
+
+	/**
+	 * Loads from a snapshot written by {@link com.datastax.refdata.snapshot.SnapshotWriter} instead of the csv files.
+	 * The snapshot is memory mapped chunkSize bytes at a time in {@link #READ_MODE_MAPPED} read mode and streamed
+	 * otherwise.
+	 */
+	public void setSnapshotFile(File snapshotFile) {
+		this.snapshotFile = snapshotFile;
+	}
+
+	public void setDividendParserThreads(int dividendParserThreads) {
+		this.dividendParserThreads = Math.max(1, dividendParserThreads);
+	}
+
+	/**
+	 * Turns on incremental loading. Daily prices and dividends of a symbol dated on or before its last updated date
+	 * are skipped, symbols missing from the map are loaded in full.
+	 */
+	public void setLastUpdatedDates(Map<ExchangeSymbol, Date> lastUpdatedDates) {
+		this.lastUpdatedDates = lastUpdatedDates;
+	}
+
+	/**
+	 * @return the number of rows skipped as already loaded by an earlier incremental load.
+	 */
+	public long getSkippedRows() {
+		return skippedRows.get();
+	}
+
+	/**
+	 * @return the number of lists of daily prices and dividends put on the queues so far.
+	 */
+	public long getQueuedLists() {
+		return queuedLists.get();
 	}
 
+	/**
+	 * @return the number of files, chunks or snapshots that could not be read in full, whose rows are missing from
+	 *         the load. The other sources are still loaded.
+	 */
+	public int getFailedSources() {
+		return failedSources.get();
+	}
+
+	/**
+	 * @return the first failure counted by {@link #getFailedSources()}, or null if there was none.
+	 */
+	public Exception getFailure() {
+		return failure;
+	}
+
+	/**
+	 * @return whether the file holds daily prices or dividends.
+	 */
+	public boolean isCsvFile(File file) {
+		return file.getName().contains(DAILY_PRICES) || file.getName().contains(DIVIDENDS);
+	}
+
+	/**
+	 * Parses the complete lines of a daily prices or dividends file from the byte offset on with the fast parser,
+	 * skipping the header when starting from the beginning. A last line without its line break is left for the next
+	 * call, as the file may still be being written. The lines are mapped and parsed in symbol aligned chunks of about
+	 * chunkSize, one after another.
+	 * 
+	 * @return the offset just after the last line parsed.
+	 */
+	public long processFileFrom(File file, long offset) throws IOException, InterruptedException {
+		if (!isCsvFile(file)) {
+			return offset;
+		}
+
+		long end;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			end = endOfLastLine(raf.getChannel(), offset);
+		} finally {
+			raf.close();
+		}
+		if (end <= offset) {
+			return offset;
+		}
+
+		for (Chunk chunk : CsvChunker.split(file, offset, end, chunkSize, offset == 0 ? 1 : 0)) {
+			parseChunk(chunk);
+		}
+		return end;
+	}
+
+	/**
+	 * @return the offset just after the last line break at or after the offset, or the offset if there is none.
+	 */
+	private static long endOfLastLine(FileChannel channel, long offset) throws IOException {
+		ByteBuffer block = ByteBuffer.allocate(8192);
+		long end = channel.size();
+		while (end > offset) {
+			long start = Math.max(offset, end - block.capacity());
+			block.clear();
+			block.limit((int) (end - start));
+			int read;
+			do {
+				read = channel.read(block, start + block.position());
+			} while (read > 0 && block.hasRemaining());
+			for (int i = block.position() - 1; i >= 0; i--) {
+				if (block.get(i) == '\n') {
+					return start + i + 1;
+				}
+			}
+			end = start;
+		}
+		return offset;
+	}
+
+	/**
+	 * @return the date rows of the symbol must be after to be loaded.
+	 */
+	private long loadAfter(String exchange, String symbol) {
+		if (lastUpdatedDates == null) {
+			return Long.MIN_VALUE;
+		}
+		Date lastUpdated = lastUpdatedDates.get(new ExchangeSymbol(exchange, symbol));
+		return lastUpdated == null ? Long.MIN_VALUE : lastUpdated.getTime();
+	}
+
+	/**
+	 * Loads the daily prices and the dividends files as two concurrent streams and returns once both are parsed.
+	 */
 	public void startProcessingData() {
 
-		// Process all the files from the csv directory
-		File cvsDir = new File(".", "src/main/resources/csv");
+		Thread dividends = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				startProcessingDividends();
+			}
+		}, "dividend-loader");
+		dividends.start();
 
-		File[] files = cvsDir.listFiles(new FileFilter() {
+		this.startProcessingDailyPrices();
+
+		try {
+			dividends.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Parses all the daily prices files on parserThreads threads, returns once they are all queued.
+	 */
+	public void startProcessingDailyPrices() {
+		this.processFiles(DAILY_PRICES, parserThreads);
+	}
+
+	/**
+	 * Parses all the dividends files on dividendParserThreads threads, returns once they are all queued.
+	 */
+	public void startProcessingDividends() {
+		this.processFiles(DIVIDENDS, dividendParserThreads);
+	}
+
+	private void processFiles(CharSequence kind, int threads) {
+
+		if (snapshotFile != null) {
+			this.processSnapshot(kind);
+			return;
+		}
+
+		// Process all the files of this kind from the csv directory
+		List<File> files = new ArrayList<File>();
+		for (File file : this.listCsvFiles()) {
+			if (file.getName().contains(kind)) {
+				files.add(file);
+			}
+		}
+
+		if (useMappedFiles && useOpenCsv) {
+			logger.warn("Memory mapped reading is only supported by the fast parser, reading files as streams");
+		}
+
+		// Each task parses whole symbols so a symbol's rows are still flushed
+		// as one list, only different files or chunks are parsed concurrently.
+		List<Runnable> tasks = new ArrayList<Runnable>();
+		for (final File file : files) {
+			if (useMappedFiles && !useOpenCsv) {
+				tasks.addAll(this.createChunkTasks(file));
+			} else {
+				tasks.add(new Runnable() {
+					@Override
+					public void run() {
+						processFile(file);
+					}
+				});
+			}
+		}
+
+		if (threads == 1) {
+			for (Runnable task : tasks) {
+				task.run();
+			}
+			return;
+		}
+
+		logger.info("Parsing " + tasks.size() + " tasks from " + files.size() + " " + kind + " files with " + threads
+				+ " parser threads");
+		ExecutorService parserExecutor = Executors.newFixedThreadPool(threads);
+
+		for (Runnable task : tasks) {
+			parserExecutor.execute(task);
+		}
+
+		parserExecutor.shutdown();
+		try {
+			while (!parserExecutor.awaitTermination(1, TimeUnit.SECONDS)) {
+				logger.debug("Waiting for parser threads to finish");
+			}
+		} catch (InterruptedException e) {
+			parserExecutor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private File[] listCsvFiles() {
+		File[] files = csvDirectory.listFiles(new FileFilter() {
 			public boolean accept(File file) {
 				return file.isFile();
 			}
 		});
 
-		for (File file : files) {
+		if (files == null) {
+			failed("csv directory " + csvDirectory.getAbsolutePath(), new IOException("Could not list "
+					+ csvDirectory.getAbsolutePath()));
+			return new File[0];
+		}
+		return files;
+	}
 
-			try {
-				if (file.getName().contains(DAILY_PRICES)) {
-					this.processDailyPricesFile(file);
-				} else if (file.getName().contains(DIVIDENDS)) {
-					//this.processDividendsFile(file);
+	private List<Runnable> createChunkTasks(File file) {
+		List<Runnable> tasks = new ArrayList<Runnable>();
+
+		if (!file.getName().contains(DAILY_PRICES) && !file.getName().contains(DIVIDENDS)) {
+			return tasks;
+		}
+
+		List<Chunk> chunks;
+		try {
+			chunks = CsvChunker.split(file, chunkSize, 1);
+		} catch (IOException e) {
+			failed("file " + file.getAbsolutePath(), e);
+			return tasks;
+		}
+
+		for (final Chunk chunk : chunks) {
+			tasks.add(new Runnable() {
+				@Override
+				public void run() {
+					processChunk(chunk);
+				}
+			});
+		}
+		return tasks;
+	}
+
+	private void processChunk(Chunk chunk) {
+		try {
+			parseChunk(chunk);
+		} catch (IOException e) {
+			failed(chunk.toString(), e);
+		} catch (RuntimeException e) {
+			failed(chunk.toString(), e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			failed(chunk.toString(), e);
+		}
+	}
+
+	private void parseChunk(Chunk chunk) throws IOException, InterruptedException {
+		File file = chunk.getFile();
+		MappedByteBuffer buffer = chunk.map();
+		ByteCsvReader reader = new ByteCsvReader(new ByteBufferInputStream(buffer), 0, dateDecoder);
+
+		if (file.getName().contains(DAILY_PRICES)) {
+			this.processDailyPrices(reader, file.getName());
+		} else if (file.getName().contains(DIVIDENDS)) {
+			this.processDividends(reader, file.getName());
+		}
+	}
+
+	private void processFile(File file) {
+		try {
+			if (file.getName().contains(DAILY_PRICES)) {
+				this.processDailyPricesFile(file);
+			} else if (file.getName().contains(DIVIDENDS)) {
+				this.processDividendsFile(file);
+			}
+		} catch (FileNotFoundException e) {
+			failed("file " + file.getAbsolutePath(), e);
+		} catch (IOException e) {
+			failed("file " + file.getAbsolutePath(), e);
+		} catch (RuntimeException e) {
+			failed("file " + file.getAbsolutePath(), e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			failed("file " + file.getAbsolutePath(), e);
+		}
+	}
+
+	/**
+	 * Records a source whose rows could not all be queued, the load carries on with the others.
+	 */
+	private synchronized void failed(String source, Exception e) {
+		logger.error("Could not load " + source, e);
+		failedSources.incrementAndGet();
+		if (failure == null) {
+			failure = e;
+		}
+	}
+
+	/**
+	 * Queues the rows of one symbol as a list view of their columns, rows are only materialized by the writers.
+	 */
+	private void flush(HistoricSeries.Builder series) throws InterruptedException {
+		if (series.size() > 0) {
+			flush(series.build());
+		}
+	}
+
+	private void flush(HistoricSeries series) throws InterruptedException {
+		logger.info("Flushing " + series.getExchange() + "-" + series.getSymbol());
+		this.queueHistoricData.put(series.asList());
+		queuedLists.incrementAndGet();
+	}
+
+	/**
+	 * Queues the daily prices or the dividends of the snapshot, skipping the blocks of the other kind.
+	 */
+	private void processSnapshot(CharSequence kind) {
+		SnapshotReader reader = null;
+		try {
+			reader = new SnapshotReader(snapshotFile, useMappedFiles, chunkSize);
+			while (reader.next()) {
+				if (kind == DAILY_PRICES && reader.isHistoricData()) {
+					HistoricSeries series = reader.readHistoricData();
+					int newer = series.countFrom(loadAfter(series.getExchange(), series.getSymbol()), false);
+					skippedRows.addAndGet(series.size() - newer);
+					if (newer > 0) {
+						flush(series.head(newer));
+					}
+				} else if (kind == DIVIDENDS && reader.isDividends()) {
+					List<Dividend> list = new ArrayList<Dividend>();
+					for (Dividend dividend : reader.readDividends()) {
+						if (dividend.getDate().getTime() > loadAfter(dividend.getExchange(), dividend.getSymbol())) {
+							list.add(dividend);
+						} else {
+							skippedRows.incrementAndGet();
+						}
+					}
+					if (!list.isEmpty()) {
+						logger.info("Flushing Dividend " + list.get(0).getExchange() + "-" + list.get(0).getSymbol());
+						this.queueDividend.put(list);
+						queuedLists.incrementAndGet();
+					}
+				}
+			}
+		} catch (IOException e) {
+			failed("snapshot " + snapshotFile.getAbsolutePath(), e);
+		} catch (RuntimeException e) {
+			failed("snapshot " + snapshotFile.getAbsolutePath(), e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			failed("snapshot " + snapshotFile.getAbsolutePath(), e);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (IOException e) {
+					logger.warn("Could not close snapshot : " + snapshotFile.getAbsolutePath(), e);
 				}
-			} catch (FileNotFoundException e) {
-				logger.warn("Could not process file : " + file.getAbsolutePath(), e);
-			} catch (IOException e) {
-				logger.warn("Could not process file : " + file.getAbsolutePath(), e);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
 			}
 		}
 	}
 
 	private void processDailyPricesFile(File file) throws IOException, InterruptedException {
 
+		if (!useOpenCsv) {
+			this.processDailyPrices(new ByteCsvReader(new FileInputStream(file), 1, dateDecoder), file.getName());
+			return;
+		}
+
 		CSVReader reader = new CSVReader(new FileReader(file.getAbsolutePath()), CSVReader.DEFAULT_SEPARATOR,
 				CSVReader.DEFAULT_QUOTE_CHARACTER, 1);
 		String[] items = null;
 		String lastSymbol = null;
 		String exchange = null;
 
-		List<HistoricData> list = new ArrayList<HistoricData>();
+		HistoricSeries.Builder series = null;
+		long loadAfter = Long.MIN_VALUE;
 
 		while ((items = reader.readNext()) != null) {
 
@@ -83,20 +502,26 @@ public class DataLoader {
 			String symbol = items[1].trim();
 
 			// Flush after every new symbol
-			if (!symbol.equalsIgnoreCase(lastSymbol) && lastSymbol != null) {
-				logger.info("Flushing " + exchange + "-" + lastSymbol);
-
-				this.queueHistoricData.put(new ArrayList<HistoricData>(list));
-				list = new ArrayList<HistoricData>();
+			if (!symbol.equalsIgnoreCase(lastSymbol)) {
+				if (lastSymbol != null) {
+					flush(series);
+				}
+				series = new HistoricSeries.Builder(exchange, symbol);
+				loadAfter = loadAfter(exchange, symbol);
 			}
 
-			Date date;
+			long date;
 			try {
-				date = dateFormatter.parse(items[2]);
-			} catch (ParseException e) {
+				date = dateDecoder.parseMillis(items[2].trim());
+			} catch (IllegalArgumentException e) {
 				logger.warn("Could not parse date " + items[2] + " continuing");
 				continue;
 			}
+			lastSymbol = symbol;
+			if (date <= loadAfter) {
+				skippedRows.incrementAndGet();
+				continue;
+			}
 			double open = Double.parseDouble(items[3]);
 			double high = Double.parseDouble(items[4]);
 			double low = Double.parseDouble(items[5]);
@@ -104,23 +529,82 @@ public class DataLoader {
 			int volume = Integer.parseInt(items[7]);
 			double adjClose = Double.parseDouble(items[8]);
 
-			lastSymbol = symbol;
-
-			HistoricData historicData = new HistoricData(exchange, symbol, date, open, high, low, close, volume,
-					adjClose);
-			list.add(historicData);
+			series.add(date, open, high, low, close, volume, adjClose);
 		}
 
 		if (exchange != null && lastSymbol != null) {
-			logger.info("Flushing " + exchange + "-" + lastSymbol);
-			this.queueHistoricData.put(new ArrayList<HistoricData>(list));
-			list = new ArrayList<HistoricData>();
+			flush(series);
 		}
 		reader.close();
 	}
 
+	private void processDailyPrices(ByteCsvReader reader, String source) throws IOException, InterruptedException {
+
+		String lastSymbol = null;
+		String exchange = null;
+
+		HistoricSeries.Builder series = null;
+		long loadAfter = Long.MIN_VALUE;
+
+		try {
+			while (reader.nextRow()) {
+
+				if (reader.getColumnCount() < 9) {
+					logger.warn("Skipping row with " + reader.getColumnCount() + " columns in " + source);
+					continue;
+				}
+
+				// Only create new Strings when the exchange or symbol actually changes
+				if (!reader.fieldEquals(0, exchange)) {
+					exchange = reader.getString(0);
+				}
+
+				if (!reader.fieldEquals(1, lastSymbol)) {
+					// Flush after every new symbol
+					if (lastSymbol != null) {
+						flush(series);
+					}
+					lastSymbol = reader.getString(1);
+					series = new HistoricSeries.Builder(exchange, lastSymbol);
+					loadAfter = loadAfter(exchange, lastSymbol);
+				}
+
+				long date;
+				try {
+					date = reader.getDateMillis(2);
+				} catch (IllegalArgumentException e) {
+					logger.warn(e.getMessage() + " continuing");
+					continue;
+				}
+				if (date <= loadAfter) {
+					skippedRows.incrementAndGet();
+					continue;
+				}
+				double open = reader.getDouble(3);
+				double high = reader.getDouble(4);
+				double low = reader.getDouble(5);
+				double close = reader.getDouble(6);
+				int volume = reader.getInt(7);
+				double adjClose = reader.getDouble(8);
+
+				series.add(date, open, high, low, close, volume, adjClose);
+			}
+
+			if (exchange != null && lastSymbol != null) {
+				flush(series);
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
 	private void processDividendsFile(File file) throws IOException, InterruptedException {
 
+		if (!useOpenCsv) {
+			this.processDividends(new ByteCsvReader(new FileInputStream(file), 1, dateDecoder), file.getName());
+			return;
+		}
+
 		CSVReader reader = new CSVReader(new FileReader(file.getAbsolutePath()), CSVReader.DEFAULT_SEPARATOR,
 				CSVReader.DEFAULT_QUOTE_CHARACTER, 1);
 		String[] items = null;
@@ -128,6 +612,7 @@ public class DataLoader {
 		String exchange = null;
 
 		List<Dividend> list = new ArrayList<Dividend>();
+		long loadAfter = Long.MIN_VALUE;
 
 		while ((items = reader.readNext()) != null) {
 
@@ -135,45 +620,106 @@ public class DataLoader {
 			String symbol = items[1].trim();
 
 			// Flush after every new symbol
-			if (!symbol.equalsIgnoreCase(lastSymbol) && lastSymbol != null) {
-				logger.info("Flushing Dividend " + exchange + "-" + lastSymbol);
-				this.queueDividend.put(new ArrayList<Dividend>(list));
-				list = new ArrayList<Dividend>();
+			if (!symbol.equalsIgnoreCase(lastSymbol)) {
+				if (!list.isEmpty()) {
+					logger.info("Flushing Dividend " + exchange + "-" + lastSymbol);
+					this.queueDividend.put(new ArrayList<Dividend>(list));
+					queuedLists.incrementAndGet();
+					list = new ArrayList<Dividend>();
+				}
+				loadAfter = loadAfter(exchange, symbol);
 			}
 
 			Date date;
 			try {
-				date = dateFormatter.parse(items[2]);
-			} catch (ParseException e) {
+				date = new Date(dateDecoder.parseMillis(items[2].trim()));
+			} catch (IllegalArgumentException e) {
 				logger.warn("Could not parse date " + items[2] + " continuing");
 				continue;
 			}
-			double dividendValue = Double.parseDouble(items[3]);
-
 			lastSymbol = symbol;
+			if (date.getTime() <= loadAfter) {
+				skippedRows.incrementAndGet();
+				continue;
+			}
+			double dividendValue = Double.parseDouble(items[3]);
 
 			Dividend dividend = new Dividend(exchange, symbol, date, dividendValue);
 			list.add(dividend);
 		}
 
-		if (exchange != null && lastSymbol != null) {
+		if (!list.isEmpty()) {
 			logger.info("Flushing Dividend " + exchange + "-" + lastSymbol);
 			this.queueDividend.put(new ArrayList<Dividend>(list));
+			queuedLists.incrementAndGet();
 			list = new ArrayList<Dividend>();
 		}
 		reader.close();
 	}
 	
-	public List<ExchangeSymbol> getExchangeSymbols() {
+	private void processDividends(ByteCsvReader reader, String source) throws IOException, InterruptedException {
 
-		// Process all the files from the csv directory
-		File cvsDir = new File(".", "src/main/resources/csv");
+		String lastSymbol = null;
+		String exchange = null;
 
-		File[] files = cvsDir.listFiles(new FileFilter() {
-			public boolean accept(File file) {
-				return file.isFile();
+		List<Dividend> list = new ArrayList<Dividend>();
+		long loadAfter = Long.MIN_VALUE;
+
+		try {
+			while (reader.nextRow()) {
+
+				if (reader.getColumnCount() < 4) {
+					logger.warn("Skipping row with " + reader.getColumnCount() + " columns in " + source);
+					continue;
+				}
+
+				if (!reader.fieldEquals(0, exchange)) {
+					exchange = reader.getString(0);
+				}
+
+				if (!reader.fieldEquals(1, lastSymbol)) {
+					// Flush after every new symbol
+					if (!list.isEmpty()) {
+						logger.info("Flushing Dividend " + exchange + "-" + lastSymbol);
+						this.queueDividend.put(list);
+						queuedLists.incrementAndGet();
+						list = new ArrayList<Dividend>();
+					}
+					lastSymbol = reader.getString(1);
+					loadAfter = loadAfter(exchange, lastSymbol);
+				}
+
+				long date;
+				try {
+					date = reader.getDateMillis(2);
+				} catch (IllegalArgumentException e) {
+					logger.warn(e.getMessage() + " continuing");
+					continue;
+				}
+				if (date <= loadAfter) {
+					skippedRows.incrementAndGet();
+					continue;
+				}
+				double dividendValue = reader.getDouble(3);
+
+				Dividend dividend = new Dividend(exchange, lastSymbol, new Date(date), dividendValue);
+				list.add(dividend);
 			}
-		});
+
+			if (!list.isEmpty()) {
+				logger.info("Flushing Dividend " + exchange + "-" + lastSymbol);
+				this.queueDividend.put(list);
+				queuedLists.incrementAndGet();
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	public List<ExchangeSymbol> getExchangeSymbols() {
+
+		// Process all the files from the csv directory
+		File[] files = this.listCsvFiles();
 
 		List<ExchangeSymbol> exchangeSymbols = new ArrayList<ExchangeSymbol>();
 		
@@ -190,7 +736,8 @@ public class DataLoader {
 			} catch (IOException e) {
 				logger.warn("Could not process file : " + file.getAbsolutePath(), e);
 			} catch (InterruptedException e) {
-				e.printStackTrace();
+				Thread.currentThread().interrupt();
+				break;
 			}
 		}
 		return exchangeSymbols;		
@@ -0,0 +1,261 @@
+package com.datastax.refdata;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams daily prices and dividends files from a drop directory into the DataLoader's queues as they are created
+ * or appended to. The byte offset reached in every file is checkpointed, so a restart carries on where the last run
+ * stopped. Offsets are only saved once every list queued before them has been written, counted by writtenLists, so
+ * a restart may write some rows twice but never skips any. The watcher does not wait for the writers, it checks for
+ * written checkpoints whenever it wakes up for a watch event, and at least every second while one is pending. Once a
+ * list has failed, counted by failedLists, the checkpoint is no longer moved on and a restart loads everything after
+ * the last checkpoint again. A file that cannot be read keeps its last offset and is tried again when it changes.
+ */
+public class DropDirectoryWatcher {
+
+	private static Logger logger = LoggerFactory.getLogger(DropDirectoryWatcher.class);
+
+	private static final long CHECKPOINT_CHECK_MILLIS = 1000;
+
+	private final File directory;
+	private final DataLoader dataLoader;
+	private final AtomicLong writtenLists;
+	private final AtomicLong failedLists;
+	private final File checkpointFile;
+	private final Map<String, Long> offsets = new HashMap<String, Long>();
+	// Oldest first, each waits for the lists queued before it to be written
+	private final Deque<Checkpoint> pending = new ArrayDeque<Checkpoint>();
+	private WatchService watchService;
+	private volatile boolean running = true;
+	private boolean checkpointHeld;
+
+	/**
+	 * @param writtenLists the number of lists taken off the DataLoader's queues and written without a failure, kept
+	 *            by the writers.
+	 * @param failedLists the number of lists taken off the queues with at least one failed write.
+	 * @param checkpointFile where the offsets are saved, outside the drop directory or named so it is not taken for
+	 *            a csv file.
+	 */
+	public DropDirectoryWatcher(File directory, DataLoader dataLoader, AtomicLong writtenLists,
+			AtomicLong failedLists, File checkpointFile) {
+		this.directory = directory;
+		this.dataLoader = dataLoader;
+		this.writtenLists = writtenLists;
+		this.failedLists = failedLists;
+		this.checkpointFile = checkpointFile;
+	}
+
+	/**
+	 * Loads every file from its checkpointed offset, then keeps loading whatever is created or appended until
+	 * {@link #stop()} is called.
+	 */
+	public void run() throws IOException, InterruptedException {
+		loadCheckpoint();
+
+		synchronized (this) {
+			if (!running) {
+				return;
+			}
+			watchService = FileSystems.getDefault().newWatchService();
+		}
+		directory.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_MODIFY);
+
+		// Registered before the first pass, so nothing dropped during it is missed
+		process(listFileNames());
+
+		try {
+			while (running) {
+				checkpoint();
+				WatchKey key = pending.isEmpty() ? watchService.take() : watchService.poll(
+						CHECKPOINT_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+				if (key == null) {
+					continue;
+				}
+				SortedSet<String> changed = new TreeSet<String>();
+				boolean overflow = false;
+
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						overflow = true;
+					} else {
+						changed.add(((Path) event.context()).getFileName().toString());
+					}
+				}
+				key.reset();
+
+				process(overflow ? listFileNames() : changed);
+			}
+		} catch (ClosedWatchServiceException e) {
+			// stop() was called
+		} finally {
+			watchService.close();
+		}
+	}
+
+	/**
+	 * Stops watching, the file being parsed is finished and checkpointed first.
+	 */
+	public synchronized void stop() {
+		running = false;
+		if (watchService != null) {
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				logger.warn("Could not close the watch service", e);
+			}
+		}
+	}
+
+	/**
+	 * Saves the most recent checkpoint whose lists have all been written. Called by the watch loop, and once more
+	 * after {@link #run()} has returned and the writers have finished, so the last offsets are not lost.
+	 */
+	public synchronized void checkpoint() {
+		long done = writtenLists.get() + failedLists.get();
+		Checkpoint written = null;
+		while (!pending.isEmpty() && pending.peekFirst().queuedLists <= done) {
+			written = pending.pollFirst();
+		}
+		if (written == null) {
+			return;
+		}
+
+		if (failedLists.get() > 0) {
+			if (!checkpointHeld) {
+				checkpointHeld = true;
+				logger.warn(failedLists.get() + " lists could not be fully written, " + checkpointFile
+						+ " is kept at the last fully written offsets so they are loaded again after a restart");
+			}
+			return;
+		}
+		try {
+			saveCheckpoint(written.offsets);
+		} catch (IOException e) {
+			logger.warn("Could not save the checkpoint " + checkpointFile, e);
+		}
+	}
+
+	private void process(SortedSet<String> fileNames) throws InterruptedException {
+		boolean moved = false;
+
+		for (String fileName : fileNames) {
+			File file = new File(directory, fileName);
+			if (!file.isFile() || !dataLoader.isCsvFile(file)) {
+				continue;
+			}
+
+			Long offset = offsets.get(fileName);
+			if (offset == null || offset > file.length()) {
+				if (offset != null) {
+					logger.warn(fileName + " is shorter than its checkpoint, loading it again from the start");
+				}
+				offset = 0L;
+			}
+
+			long end;
+			try {
+				end = dataLoader.processFileFrom(file, offset);
+			} catch (IOException e) {
+				logger.warn("Could not load " + fileName + " from byte " + offset + ", it is kept at that offset", e);
+				continue;
+			} catch (RuntimeException e) {
+				logger.warn("Could not load " + fileName + " from byte " + offset + ", it is kept at that offset", e);
+				continue;
+			}
+			if (end != offset) {
+				logger.info("Loaded " + fileName + " from byte " + offset + " to " + end);
+				offsets.put(fileName, end);
+				moved = true;
+			}
+		}
+
+		if (moved) {
+			synchronized (this) {
+				pending.addLast(new Checkpoint(new HashMap<String, Long>(offsets), dataLoader.getQueuedLists()));
+			}
+		}
+	}
+
+	private SortedSet<String> listFileNames() {
+		String[] names = directory.list();
+		return names == null ? new TreeSet<String>() : new TreeSet<String>(Arrays.asList(names));
+	}
+
+	private void loadCheckpoint() throws IOException {
+		if (!checkpointFile.exists()) {
+			return;
+		}
+		Properties properties = new Properties();
+		InputStream in = new FileInputStream(checkpointFile);
+		try {
+			properties.load(in);
+		} finally {
+			in.close();
+		}
+		for (String fileName : properties.stringPropertyNames()) {
+			offsets.put(fileName, Long.parseLong(properties.getProperty(fileName)));
+		}
+		logger.info("Resuming " + offsets.size() + " files from " + checkpointFile);
+	}
+
+	/**
+	 * Writes the offsets to a temporary file first, so a crash never leaves a partly written checkpoint.
+	 */
+	private void saveCheckpoint(Map<String, Long> offsets) throws IOException {
+		Properties properties = new Properties();
+		for (Map.Entry<String, Long> entry : offsets.entrySet()) {
+			properties.setProperty(entry.getKey(), entry.getValue().toString());
+		}
+
+		File temp = new File(checkpointFile.getPath() + ".tmp");
+		OutputStream out = new FileOutputStream(temp);
+		try {
+			properties.store(out, "Byte offsets loaded from " + directory.getAbsolutePath());
+		} finally {
+			out.close();
+		}
+		Files.move(temp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * The offsets reached by a pass, saved once the queuedLists lists queued before the end of the pass are written.
+	 */
+	private static class Checkpoint {
+		private final Map<String, Long> offsets;
+		private final long queuedLists;
+
+		Checkpoint(Map<String, Long> offsets, long queuedLists) {
+			this.offsets = offsets;
+			this.queuedLists = queuedLists;
+		}
+	}
+}
@@ -0,0 +1,11 @@
+package com.datastax.refdata;
+
+import com.datastax.refdata.model.HistoricData;
+
+/**
+ * Receives the rows of a full table scan. Ranges are scanned concurrently, so implementations must be thread-safe.
+ */
+public interface HistoricDataConsumer {
+
+	public void accept(HistoricData row);
+}
@@ -0,0 +1,17 @@
+package com.datastax.refdata;
+
+import java.util.List;
+
+import com.datastax.refdata.model.ExchangeSymbol;
+import com.datastax.refdata.model.HistoricData;
+
+/**
+ * Receives the results of a bulk read as each symbol completes. Callbacks can run concurrently and on the driver's
+ * I/O threads, so they must be thread-safe and must not block.
+ */
+public interface HistoricDataHandler {
+
+	public void onResult(ExchangeSymbol exchangeSymbol, List<HistoricData> rows);
+
+	public void onFailure(ExchangeSymbol exchangeSymbol, Throwable t);
+}
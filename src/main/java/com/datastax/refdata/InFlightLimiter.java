@@ -0,0 +1,80 @@
+package com.datastax.refdata;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Caps the number of requests in flight to the cluster. Callers block in {@link #acquire()} once the limit is
+ * reached, which pushes back on the writer threads and from there on the loader queues. The limit can be changed
+ * while requests are in flight, lowering it holds back new requests until enough of them have been released.
+ */
+public class InFlightLimiter {
+
+	private final ResizableSemaphore permits;
+	private volatile int limit;
+	private final AtomicInteger inFlight = new AtomicInteger(0);
+	private final AtomicInteger peak = new AtomicInteger(0);
+
+	public InFlightLimiter(int limit) {
+		if (limit < 1) {
+			throw new IllegalArgumentException("In flight limit must be at least 1, was " + limit);
+		}
+		this.limit = limit;
+		this.permits = new ResizableSemaphore(limit);
+	}
+
+	public void acquire() throws InterruptedException {
+		permits.acquire();
+		int current = inFlight.incrementAndGet();
+		int highest = peak.get();
+		while (current > highest && !peak.compareAndSet(highest, current)) {
+			highest = peak.get();
+		}
+	}
+
+	public void release() {
+		inFlight.decrementAndGet();
+		permits.release();
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	public synchronized void setLimit(int limit) {
+		if (limit < 1) {
+			throw new IllegalArgumentException("In flight limit must be at least 1, was " + limit);
+		}
+		if (limit > this.limit) {
+			permits.release(limit - this.limit);
+		} else if (limit < this.limit) {
+			permits.reducePermits(this.limit - limit);
+		}
+		this.limit = limit;
+	}
+
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	/**
+	 * @return the most requests in flight at once since the previous call.
+	 */
+	public int getAndResetPeak() {
+		return peak.getAndSet(inFlight.get());
+	}
+
+	private static class ResizableSemaphore extends Semaphore {
+
+		private static final long serialVersionUID = 1L;
+
+		ResizableSemaphore(int permits) {
+			super(permits);
+		}
+
+		@Override
+		protected void reducePermits(int reduction) {
+			super.reducePermits(reduction);
+		}
+	}
+}
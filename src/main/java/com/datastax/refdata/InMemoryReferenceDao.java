@@ -0,0 +1,352 @@
+package com.datastax.refdata;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.datastax.refdata.csv.DateDecoder;
+import com.datastax.refdata.metrics.Metrics;
+import com.datastax.refdata.metrics.OperationMetrics;
+import com.datastax.refdata.model.Dividend;
+import com.datastax.refdata.model.ExchangeSymbol;
+import com.datastax.refdata.model.HistoricData;
+import com.datastax.refdata.model.HistoricDataQuery;
+import com.datastax.refdata.model.HistoricSeries;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * In process store mirroring the Cassandra schema, one partition per exchange symbol with rows sorted by date
+ * descending. Writes are upserts, like in Cassandra. Used to measure the loader and the queries without a cluster.
+ * Historic data is held as a columnar {@link HistoricSeries} per symbol, replaced as a whole on every write.
+ */
+public class InMemoryReferenceDao implements ReferenceDao {
+
+	private static final long RECENT_DATE = new DateDecoder().parseMillis("2009-10-29");
+
+	private final ConcurrentMap<ExchangeSymbol, HistoricSeries> historicData = new ConcurrentHashMap<ExchangeSymbol, HistoricSeries>();
+	private final ConcurrentMap<ExchangeSymbol, NavigableMap<Long, Dividend>> dividends = new ConcurrentHashMap<ExchangeSymbol, NavigableMap<Long, Dividend>>();
+	private final ConcurrentMap<ExchangeSymbol, Date> lastUpdatedDates = new ConcurrentHashMap<ExchangeSymbol, Date>();
+
+	private AtomicLong TOTAL_POINTS = new AtomicLong(0);
+	private AtomicLong TOTAL_DIVIDENDS = new AtomicLong(0);
+	private AtomicLong writeRequests = new AtomicLong(0);
+	private AtomicLong historicWriteRequests = new AtomicLong(0);
+	private AtomicInteger requestCount = new AtomicInteger(0);
+	private volatile MetadataAggregator aggregator;
+	private volatile AdaptiveConcurrencyController controller;
+
+	private final Metrics metrics = new Metrics();
+	private final OperationMetrics insertMetrics = metrics.get(Metrics.INSERT);
+	private final OperationMetrics insertMetaDataMetrics = metrics.get(Metrics.INSERT_METADATA);
+	private final OperationMetrics readMetrics = metrics.get(Metrics.READ);
+	private final OperationMetrics rangeReadMetrics = metrics.get(Metrics.RANGE_READ);
+	private final OperationMetrics scanMetrics = metrics.get(Metrics.SCAN);
+
+	@Override
+	public int insertHistoricData(List<HistoricData> list) {
+		if (list.isEmpty()) {
+			return 0;
+		}
+		long start = insertMetrics.start();
+
+		// Lists from the DataLoader are views of a series already, anything else is copied into one
+		HistoricSeries series = HistoricSeries.of(list);
+		ExchangeSymbol exchangeSymbol = new ExchangeSymbol(series.getExchange(), series.getSymbol());
+		while (true) {
+			HistoricSeries existing = historicData.putIfAbsent(exchangeSymbol, series);
+			if (existing == null || historicData.replace(exchangeSymbol, existing, existing.merge(series))) {
+				break;
+			}
+		}
+		TOTAL_POINTS.addAndGet(list.size());
+		writeRequests.addAndGet(list.size());
+		historicWriteRequests.addAndGet(list.size());
+		insertMetrics.end(start, list.size(), true);
+		if (controller != null) {
+			controller.onSample(System.nanoTime() - start, true);
+		}
+
+		// The rows are in the store by now, so the aggregator never holds a date ahead of them
+		if (aggregator != null) {
+			aggregator.update(exchangeSymbol, series.getDate(0));
+			return 0;
+		}
+		start = insertMetaDataMetrics.start();
+		updateLastUpdatedDate(exchangeSymbol, series.getDate(0));
+		writeRequests.incrementAndGet();
+		insertMetaDataMetrics.end(start, 1, true);
+		return 0;
+	}
+
+	/**
+	 * Moves the last updated date of the symbol on, never back, when lists of the same symbol are written out of
+	 * order. Same compare and set loop as {@link MetadataAggregator#update(ExchangeSymbol, long)}.
+	 */
+	private void updateLastUpdatedDate(ExchangeSymbol exchangeSymbol, long date) {
+		Date updated = new Date(date);
+		while (true) {
+			Date current = lastUpdatedDates.putIfAbsent(exchangeSymbol, updated);
+			if (current == null || current.getTime() >= date
+					|| lastUpdatedDates.replace(exchangeSymbol, current, updated)) {
+				return;
+			}
+		}
+	}
+
+	@Override
+	public int insertLastUpdatedDates(Map<ExchangeSymbol, Date> dates) {
+		long start = insertMetaDataMetrics.start();
+		lastUpdatedDates.putAll(dates);
+		writeRequests.addAndGet(dates.size());
+		insertMetaDataMetrics.end(start, dates.size(), true);
+		return 0;
+	}
+
+	@Override
+	public void setMetadataAggregator(MetadataAggregator aggregator) {
+		this.aggregator = aggregator;
+	}
+
+	@Override
+	public void setConcurrencyController(AdaptiveConcurrencyController controller) {
+		this.controller = controller;
+	}
+
+	@Override
+	public ListenableFuture<Integer> insertHistoricDataAsync(List<HistoricData> list) {
+		return Futures.immediateFuture(insertHistoricData(list));
+	}
+
+	@Override
+	public int insertDividend(List<Dividend> list) {
+		long start = insertMetrics.start();
+		for (Dividend row : list) {
+			partition(dividends, new ExchangeSymbol(row.getExchange(), row.getSymbol())).put(row.getDate().getTime(),
+					row);
+			TOTAL_DIVIDENDS.incrementAndGet();
+			writeRequests.incrementAndGet();
+		}
+		insertMetrics.end(start, list.size(), true);
+		if (controller != null) {
+			controller.onSample(System.nanoTime() - start, true);
+		}
+		return 0;
+	}
+
+	@Override
+	public ListenableFuture<Integer> insertDividendAsync(List<Dividend> list) {
+		return Futures.immediateFuture(insertDividend(list));
+	}
+
+	@Override
+	public void selectAllHistoricData(int fetchSize) {
+		for (HistoricSeries series : historicData.values()) {
+			for (int i = 0; i < series.size(); i++) {
+				series.getClose(i);
+			}
+		}
+	}
+
+	@Override
+	public List<ScanRange> scanHistoricData(int splits, int concurrency, int fetchSize,
+			final HistoricDataConsumer consumer) throws InterruptedException, ExecutionException {
+
+		// A mixed hash of the exchange symbol stands in for the partitioner's token
+		return new ParallelScan() {
+			@Override
+			protected long scan(ScanRange range) {
+				requestCount.incrementAndGet();
+				long start = scanMetrics.start();
+				int rows = 0;
+
+				for (Map.Entry<ExchangeSymbol, HistoricSeries> partition : historicData.entrySet()) {
+					if (range.contains(token(partition.getKey()))) {
+						HistoricSeries series = partition.getValue();
+						for (int i = 0; i < series.size(); i++) {
+							consumer.accept(series.get(i));
+							rows++;
+						}
+					}
+				}
+				scanMetrics.end(start, rows, true);
+				return rows;
+			}
+		}.run(ScanRange.split(splits), concurrency);
+	}
+
+	private static long token(ExchangeSymbol exchangeSymbol) {
+		long token = exchangeSymbol.hashCode() * 0x9E3779B97F4A7C15L;
+		token ^= token >>> 29;
+		// Long.MIN_VALUE lies outside every (start, end] range
+		return token == Long.MIN_VALUE ? Long.MAX_VALUE : token;
+	}
+
+	@Override
+	public void selectAllHistoricData(ExchangeSymbol exchangeSymbol) {
+		requestCount.incrementAndGet();
+		long start = readMetrics.start();
+		int rows = 0;
+
+		HistoricSeries series = historicData.get(exchangeSymbol);
+		if (series != null) {
+			// Rows are sorted by date descending, the head holds everything after the date
+			for (int i = 0, end = series.countFrom(RECENT_DATE, false); i < end; i++) {
+				series.get(i);
+				rows++;
+			}
+		}
+		readMetrics.end(start, rows, true);
+	}
+
+	@Override
+	public ListenableFuture<Integer> selectAllHistoricData(List<ExchangeSymbol> exchangeSymbols, int maxConcurrent,
+			HistoricDataHandler handler) {
+		for (ExchangeSymbol exchangeSymbol : exchangeSymbols) {
+			requestCount.incrementAndGet();
+			long start = readMetrics.start();
+
+			HistoricSeries series = historicData.get(exchangeSymbol);
+			List<HistoricData> rows = series == null ? new ArrayList<HistoricData>() : new ArrayList<HistoricData>(
+					series.asList().subList(0, series.countFrom(RECENT_DATE, false)));
+
+			readMetrics.end(start, rows.size(), true);
+			handler.onResult(exchangeSymbol, rows);
+		}
+		return Futures.immediateFuture(0);
+	}
+
+	@Override
+	public Iterator<HistoricData> selectHistoricData(HistoricDataQuery query) {
+		requestCount.incrementAndGet();
+		long start = rangeReadMetrics.start();
+
+		HistoricSeries series = historicData.get(query.getExchangeSymbol());
+		List<HistoricData> rows = new ArrayList<HistoricData>();
+
+		if (series != null) {
+			// Rows are sorted by date descending, so the range runs from 'to' down to 'from'
+			int first = query.getTo() == null ? 0 : series.countFrom(query.getTo().getTime(), true);
+			int end = query.getFrom() == null ? series.size() : series.countFrom(query.getFrom().getTime(), true);
+			if (query.getLimit() > 0) {
+				end = Math.min(end, first + query.getLimit());
+			}
+			for (int i = first; i < end; i++) {
+				rows.add(query.project(series, i));
+			}
+		}
+		rangeReadMetrics.end(start, rows.size(), true);
+		return rows.iterator();
+	}
+
+	@Override
+	public HistoricData selectLatestHistoricData(ExchangeSymbol exchangeSymbol) {
+		requestCount.incrementAndGet();
+		long start = readMetrics.start();
+
+		HistoricSeries series = historicData.get(exchangeSymbol);
+		HistoricData latest = series == null || series.isEmpty() ? null : series.get(0);
+
+		readMetrics.end(start, latest == null ? 0 : 1, true);
+		return latest;
+	}
+
+	@Override
+	public Date selectLastUpdatedDate(ExchangeSymbol exchangeSymbol) {
+		requestCount.incrementAndGet();
+		long start = readMetrics.start();
+		Date lastUpdated = lastUpdatedDates.get(exchangeSymbol);
+		readMetrics.end(start, lastUpdated == null ? 0 : 1, true);
+		return lastUpdated;
+	}
+
+	@Override
+	public Map<ExchangeSymbol, Date> selectAllLastUpdatedDates() {
+		requestCount.incrementAndGet();
+		long start = readMetrics.start();
+		Map<ExchangeSymbol, Date> lastUpdated = new HashMap<ExchangeSymbol, Date>(lastUpdatedDates);
+		readMetrics.end(start, lastUpdated.size(), true);
+		return lastUpdated;
+	}
+
+	/**
+	 * @return the rows of a symbol sorted by date descending, empty if there are none.
+	 */
+	public HistoricSeries getHistoricData(ExchangeSymbol exchangeSymbol) {
+		HistoricSeries series = historicData.get(exchangeSymbol);
+		return series == null ? new HistoricSeries.Builder(exchangeSymbol.getExchange(), exchangeSymbol.getSymbol(),
+				0).build() : series;
+	}
+
+	public Map<ExchangeSymbol, Date> getLastUpdatedDates() {
+		return Collections.unmodifiableMap(lastUpdatedDates);
+	}
+
+	@Override
+	public long getTotalPoints() {
+		return TOTAL_POINTS.get();
+	}
+
+	@Override
+	public long getTotalDividends() {
+		return TOTAL_DIVIDENDS.get();
+	}
+
+	@Override
+	public long getFailedWrites() {
+		return 0;
+	}
+
+	@Override
+	public long getWriteRequests() {
+		return writeRequests.get();
+	}
+
+	@Override
+	public long getHistoricWriteRequests() {
+		return historicWriteRequests.get();
+	}
+
+	@Override
+	public int getWritesInFlight() {
+		return 0;
+	}
+
+	@Override
+	public int getRequestCount() {
+		return requestCount.get();
+	}
+
+	@Override
+	public Metrics getMetrics() {
+		return metrics;
+	}
+
+	@Override
+	public void close() {
+	}
+
+	private static <T> NavigableMap<Long, T> partition(ConcurrentMap<ExchangeSymbol, NavigableMap<Long, T>> table,
+			ExchangeSymbol key) {
+		NavigableMap<Long, T> partition = table.get(key);
+		if (partition == null) {
+			NavigableMap<Long, T> created = new ConcurrentSkipListMap<Long, T>(Collections.reverseOrder());
+			partition = table.putIfAbsent(key, created);
+			if (partition == null) {
+				partition = created;
+			}
+		}
+		return partition;
+	}
+}
@@ -1,10 +1,15 @@
 package com.datastax.refdata;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
@@ -13,6 +18,7 @@ import org.slf4j.LoggerFactory;
 import com.datastax.demo.utils.PropertyHelper;
 import com.datastax.demo.utils.Timer;
 import com.datastax.refdata.model.Dividend;
+import com.datastax.refdata.model.ExchangeSymbol;
 import com.datastax.refdata.model.HistoricData;
 
 public class Main {
@@ -21,42 +27,298 @@ public class Main {
 	
 	private AtomicLong TOTAL_POINTS = new AtomicLong(0);
 	
+	// Lists taken off either queue and written without a failure, and the ones with at least one failed write
+	private final AtomicLong writtenLists = new AtomicLong(0);
+	private final AtomicLong failedLists = new AtomicLong(0);
+	
+	// Caps the writers writing at once when adaptiveConcurrency is on, null otherwise
+	private InFlightLimiter writerLimiter;
+	
+	// Poison pills, compared by identity, telling a writer there is nothing more to write.
+	private static final List<HistoricData> END_OF_HISTORIC_DATA = new ArrayList<HistoricData>();
+	private static final List<Dividend> END_OF_DIVIDENDS = new ArrayList<Dividend>();
+	
 	public Main() {
 
 		String contactPointsStr = PropertyHelper.getProperty("contactPoints", "localhost");
+		String store = PropertyHelper.getProperty("store", ReferenceDaoFactory.STORE_CASSANDRA);
+		String metricsPeriodStr = PropertyHelper.getProperty("metricsPeriod", "10");
+		String metricsFile = PropertyHelper.getProperty("metricsFile", null);
 		String noOfThreadsStr = PropertyHelper.getProperty("noOfThreads", "2");
+		String dividendThreadsStr = PropertyHelper.getProperty("dividendThreads", "1");
+		String queueSizeStr = PropertyHelper.getProperty("queueSize", "10");
+		String dividendQueueSizeStr = PropertyHelper.getProperty("dividendQueueSize", "10");
+		String maxInFlightStr = PropertyHelper.getProperty("maxInFlight", "1024");
+		String batchRowsStr = PropertyHelper.getProperty("batchRows", "1");
+		String batchKbStr = PropertyHelper.getProperty("batchKb", "5");
+		String parserThreadsStr = PropertyHelper.getProperty("parserThreads", "1");
+		String dividendParserThreadsStr = PropertyHelper.getProperty("dividendParserThreads", "1");
+		String csvParser = PropertyHelper.getProperty("csvParser", DataLoader.PARSER_FAST);
+		String csvDir = PropertyHelper.getProperty("csvDir", "src/main/resources/csv");
+		String readMode = PropertyHelper.getProperty("readMode", DataLoader.READ_MODE_STREAM);
+		String chunkSizeMbStr = PropertyHelper.getProperty("chunkSizeMb", "64");
+		String incrementalStr = PropertyHelper.getProperty("incremental", "false");
+		String metadataFlushSecondsStr = PropertyHelper.getProperty("metadataFlushSeconds", "0");
+		String watchStr = PropertyHelper.getProperty("watch", "false");
+		String checkpointFileStr = PropertyHelper.getProperty("checkpointFile", new File(csvDir,
+				"checkpoints.properties").getPath());
+		String snapshot = PropertyHelper.getProperty("snapshot", null);
+		String threadMode = PropertyHelper.getProperty("threadMode", VirtualThreads.MODE_PLATFORM);
+		String virtualThreadLimitStr = PropertyHelper.getProperty("virtualThreadLimit", "1024");
+		String adaptiveConcurrencyStr = PropertyHelper.getProperty("adaptiveConcurrency", "false");
+		
+		if (VirtualThreads.MODE_VIRTUAL.equalsIgnoreCase(threadMode)) {
+			VirtualThreads.checkAvailable();
+		}
 		
-		ReferenceDao dao = new ReferenceDao(contactPointsStr.split(","));
+		final ReferenceDao dao = ReferenceDaoFactory.create(store, contactPointsStr.split(","),
+				Integer.parseInt(maxInFlightStr), Integer.parseInt(batchRowsStr), Integer.parseInt(batchKbStr) * 1024);
+		dao.getMetrics().startReporting(Long.parseLong(metricsPeriodStr));
 		
-		int noOfThreads = Integer.parseInt(noOfThreadsStr);
+		// Last updated dates are collected over the whole load and written once per symbol
+		MetadataAggregator metadataAggregator = new MetadataAggregator();
+		dao.setMetadataAggregator(metadataAggregator);
 		
-		//Create shared queue 
-		BlockingQueue<List<HistoricData>> queueHistoricData = new ArrayBlockingQueue<List<HistoricData>>(10);
-		BlockingQueue<List<Dividend>> queueDividend = new ArrayBlockingQueue<List<Dividend>>(10);
+		// The writers and writes in flight adapt to the cluster, up to their configured numbers
+		AdaptiveConcurrencyController controller = null;
+		if (Boolean.parseBoolean(adaptiveConcurrencyStr)) {
+			controller = new AdaptiveConcurrencyController();
+			dao.setConcurrencyController(controller);
+		}
+		
+		boolean virtual = VirtualThreads.MODE_VIRTUAL.equalsIgnoreCase(threadMode);
+		
+		// In virtual thread mode each stream has one dispatcher, which writes every list on its own thread
+		int noOfThreads = virtual ? 1 : Integer.parseInt(noOfThreadsStr);
+		final int dividendThreads = virtual ? 1 : Integer.parseInt(dividendThreadsStr);
+		int parserThreads = Integer.parseInt(parserThreadsStr);
 		
-		ExecutorService executor = Executors.newFixedThreadPool(noOfThreads);
+		//Create shared queues, one per stream 
+		BlockingQueue<List<HistoricData>> queueHistoricData = new ArrayBlockingQueue<List<HistoricData>>(
+				Integer.parseInt(queueSizeStr));
+		final BlockingQueue<List<Dividend>> queueDividend = new ArrayBlockingQueue<List<Dividend>>(
+				Integer.parseInt(dividendQueueSizeStr));
+		
+		ExecutorService historicExecutor = Executors.newFixedThreadPool(noOfThreads);
+		final ExecutorService dividendExecutor = Executors.newFixedThreadPool(dividendThreads);
 		Timer timer = new Timer();
 		timer.start();
 		
-		for (int i = 0; i < noOfThreads; i++) {
-			executor.execute(new HistoricDataWriter(dao, queueHistoricData));
-			executor.execute(new DividendWriter(dao, queueDividend));
+		if (virtual) {
+			InFlightLimiter limiter = new InFlightLimiter(Integer.parseInt(virtualThreadLimitStr));
+			logger.info("Writing every list on its own thread, at most " + limiter.getLimit() + " at a time");
+			if (controller != null) {
+				controller.control("writers", limiter, 1);
+			}
+			historicExecutor.execute(new ListDispatcher<HistoricData>(queueHistoricData, END_OF_HISTORIC_DATA,
+					VirtualThreads.newThreadPerTaskExecutor("historic-writer"), limiter) {
+				@Override
+				int write(List<HistoricData> list) throws Exception {
+					return dao.insertHistoricData(list);
+				}
+			});
+			dividendExecutor.execute(new ListDispatcher<Dividend>(queueDividend, END_OF_DIVIDENDS,
+					VirtualThreads.newThreadPerTaskExecutor("dividend-writer"), limiter) {
+				@Override
+				int write(List<Dividend> list) throws Exception {
+					return dao.insertDividend(list);
+				}
+			});
+		} else {
+			if (controller != null) {
+				writerLimiter = new InFlightLimiter(noOfThreads + dividendThreads);
+				controller.control("writers", writerLimiter, 1);
+			}
+			for (int i = 0; i < noOfThreads; i++) {
+				historicExecutor.execute(new HistoricDataWriter(dao, queueHistoricData));
+			}
+			for (int i = 0; i < dividendThreads; i++) {
+				dividendExecutor.execute(new DividendWriter(dao, queueDividend));
+			}
+		}
+		if (controller != null) {
+			controller.start(1000);
+		}
+		
+		final DataLoader dataLoader = new DataLoader (queueHistoricData, queueDividend, parserThreads);
+		dataLoader.setDividendParserThreads(Integer.parseInt(dividendParserThreadsStr));
+		dataLoader.setCsvParser(csvParser);
+		dataLoader.setCsvDirectory(new File(csvDir));
+		dataLoader.setReadMode(readMode, Long.parseLong(chunkSizeMbStr) * 1024 * 1024);
+		if (snapshot != null) {
+			dataLoader.setSnapshotFile(new File(snapshot));
 		}
 		
-		DataLoader dataLoader = new DataLoader (queueHistoricData, queueDividend);
-		dataLoader.startProcessingData();
+		// Only rows newer than each symbol's last update are written
+		if (Boolean.parseBoolean(incrementalStr)) {
+			Map<ExchangeSymbol, Date> lastUpdatedDates = dao.selectAllLastUpdatedDates();
+			logger.info("Incremental load after the last updated dates of " + lastUpdatedDates.size() + " symbols");
+			dataLoader.setLastUpdatedDates(lastUpdatedDates);
+			metadataAggregator.seed(lastUpdatedDates);
+		}
+		
+		boolean watch = Boolean.parseBoolean(watchStr);
+		long metadataFlushSeconds = Long.parseLong(metadataFlushSecondsStr);
+		if (metadataFlushSeconds > 0 || watch) {
+			// A long running watch only stops when it is killed, so its metadata is flushed every minute by default
+			metadataAggregator.startFlushing(dao, metadataFlushSeconds > 0 ? metadataFlushSeconds : 60);
+		}
 		
-		while(!queueHistoricData.isEmpty() && !queueDividend.isEmpty() ){
-			logger.info("Messages left to send " + (queueHistoricData.size() + queueDividend.size()));
+		if (watch) {
+			final DropDirectoryWatcher watcher = new DropDirectoryWatcher(new File(csvDir), dataLoader, writtenLists,
+					failedLists, new File(checkpointFileStr));
+			final Thread loader = Thread.currentThread();
 			
-			sleep(1);
-		}		
+			// On shutdown the watcher stops and the queues are drained before the process exits
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					watcher.stop();
+					try {
+						loader.join();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}, "watch-shutdown"));
+			
+			logger.info("Watching " + csvDir + " for daily prices and dividends, checkpoints in " + checkpointFileStr);
+			try {
+				watcher.run();
+			} catch (Exception e) {
+				logger.warn("Stopped watching " + csvDir, e);
+			}
+			endOfStream(queueDividend, END_OF_DIVIDENDS, dividendThreads, dividendExecutor, dao);
+			endOfStream(queueHistoricData, END_OF_HISTORIC_DATA, noOfThreads, historicExecutor, dao);
+			// Every queued list has been written by now, so the last offsets can be saved
+			watcher.checkpoint();
+			stopController(controller);
+			writeMetadata(metadataAggregator, dao);
+			dao.getMetrics().finishReporting(metricsFile);
+			dao.close();
+			logger.info("Total Points " + dao.getTotalPoints() + ", Total Dividends " + dao.getTotalDividends()
+					+ ". Failed writes " + dao.getFailedWrites());
+			return;
+		}
+		
+		// Dividends are loaded as their own stream, next to the daily prices
+		Thread dividendStream = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				Timer dividendTimer = new Timer();
+				dataLoader.startProcessingDividends();
+				endOfStream(queueDividend, END_OF_DIVIDENDS, dividendThreads, dividendExecutor, dao);
+				dividendTimer.end();
+				logThroughput("Dividend loading", dividendTimer, dao.getTotalDividends());
+			}
+		}, "dividend-stream");
+		dividendStream.start();
+		
+		Timer historicTimer = new Timer();
+		dataLoader.startProcessingDailyPrices();
+		endOfStream(queueHistoricData, END_OF_HISTORIC_DATA, noOfThreads, historicExecutor, dao);
+		writeMetadata(metadataAggregator, dao);
+		historicTimer.end();
+		logThroughput("Historic data loading", historicTimer, dao.getTotalPoints());
+		
+		try {
+			dividendStream.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		stopController(controller);
 		timer.end();
-		logger.info("Data Loading took " + timer.getTimeTakenSeconds() + " secs. Total Points " + dao.getTotalPoints() + " (" + (dao.getTotalPoints()/timer.getTimeTakenSeconds()) + " a sec)");
 		
+		logThroughput("Data Loading", timer, dao.getTotalPoints() + dao.getTotalDividends());
+		logger.info("Total Points " + dao.getTotalPoints() + ", Total Dividends " + dao.getTotalDividends()
+				+ ". Failed writes " + dao.getFailedWrites() + ", skipped rows " + dataLoader.getSkippedRows());
+		logger.info("Historic data write requests " + dao.getHistoricWriteRequests() + " for " + dao.getTotalPoints()
+				+ " points (" + String.format("%.1f", dao.getTotalPoints()
+				/ (double) Math.max(1, dao.getHistoricWriteRequests())) + " points per request), "
+				+ dao.getWriteRequests() + " write requests in all including dividends and metadata");
+		dao.getMetrics().finishReporting(metricsFile);
+		
+		dao.close();
+		if (dataLoader.getFailedSources() > 0) {
+			logger.error("Load failed, " + dataLoader.getFailedSources()
+					+ " files, chunks or snapshots could not be read. First failure : " + dataLoader.getFailure());
+			System.exit(1);
+		}
 		System.exit(0);
 	}
 	
+	/**
+	 * Called once a stream has been parsed. Tells every writer of the stream to stop once the queue is drained and
+	 * waits for them, writers only exit after every write they sent has been acknowledged.
+	 */
+	private <T> void endOfStream(BlockingQueue<List<T>> queue, List<T> endOfData, int writers,
+			ExecutorService executor, ReferenceDao dao) {
+		try {
+			for (int i = 0; i < writers; i++) {
+				queue.put(endOfData);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
+		executor.shutdown();
+		try {
+			while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+				logger.info("Messages left to send " + queue.size() + ", writes in flight " + dao.getWritesInFlight());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private void stopController(AdaptiveConcurrencyController controller) {
+		if (controller != null) {
+			controller.stop();
+			logger.info("Finished with " + controller);
+		}
+	}
+	
+	/**
+	 * Counts a list taken off a queue once its writes have completed, as written only if none of them failed.
+	 */
+	private void listWritten(int failures) {
+		if (failures == 0) {
+			writtenLists.incrementAndGet();
+		} else {
+			failedLists.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * Waits for a writer permit when the number of writers writing at once is controlled.
+	 */
+	private void acquireWriter() throws InterruptedException {
+		if (writerLimiter != null) {
+			writerLimiter.acquire();
+		}
+	}
+	
+	private void releaseWriter() {
+		if (writerLimiter != null) {
+			writerLimiter.release();
+		}
+	}
+	
+	private void writeMetadata(MetadataAggregator metadataAggregator, ReferenceDao dao) {
+		metadataAggregator.stopFlushing();
+		try {
+			logger.info("Wrote the last updated dates of " + metadataAggregator.flush(dao) + " symbols");
+		} catch (Exception e) {
+			logger.warn("Could not write the last updated dates", e);
+		}
+	}
+	
+	private void logThroughput(String name, Timer timer, long rows) {
+		double seconds = Math.max(1, timer.getTimeTakenMillis()) / 1000d;
+		logger.info(name + " took " + String.format("%.3f", seconds) + " secs. Total rows " + rows + " ("
+				+ (long) (rows / seconds) + " a sec)");
+	}
+	
 	class HistoricDataWriter implements Runnable {
 
 		private ReferenceDao dao;
@@ -70,16 +332,37 @@ public class Main {
 		@Override
 		public void run() {			
 			while(true){				
-				List<HistoricData> list = queue.poll();
-								
-				if (list!=null){
-					try {
-						this.dao.insertHistoricData(list);
-					} catch (Exception e) {
-						// TODO Auto-generated catch block
-						e.printStackTrace();
-					}
-				}				
+				List<HistoricData> list;
+				try {
+					list = queue.take();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				
+				if (list == END_OF_HISTORIC_DATA){
+					return;
+				}
+				
+				try {
+					acquireWriter();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				
+				int failures = 1;
+				try {
+					failures = this.dao.insertHistoricData(list);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				} catch (Exception e) {
+					logger.error("Could not write " + list.size() + " historic data rows", e);
+				} finally {
+					releaseWriter();
+					listWritten(failures);
+				}
 			}				
 		}
 	}
@@ -97,20 +380,100 @@ public class Main {
 		@Override
 		public void run() {			
 			while(true){				
-				List<Dividend> list = queue.poll();
+				List<Dividend> list;
+				try {
+					list = queue.take();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
 				
-				if (list!=null){
-					this.dao.insertDividend(list);
-				}				
+				if (list == END_OF_DIVIDENDS){
+					return;
+				}
+				
+				try {
+					acquireWriter();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				
+				int failures = 1;
+				try {
+					failures = this.dao.insertDividend(list);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				} catch (Exception e) {
+					logger.error("Could not write " + list.size() + " dividends", e);
+				} finally {
+					releaseWriter();
+					listWritten(failures);
+				}
 			}				
 		}
 	}
 	
-	private void sleep(int seconds) {
-		try {
-			Thread.sleep(seconds * 1000);
-		} catch (InterruptedException e) {
-			e.printStackTrace();
+	/**
+	 * Takes lists off a queue and writes each one as its own task, in place of a pool of writers in virtual thread
+	 * mode. No more lists than the limiter allows are written at a time. Returns once the end of the stream has been
+	 * taken and every task has finished.
+	 */
+	abstract class ListDispatcher<T> implements Runnable {
+
+		private BlockingQueue<List<T>> queue;
+		private List<T> endOfData;
+		private ExecutorService tasks;
+		private InFlightLimiter limiter;
+
+		public ListDispatcher(BlockingQueue<List<T>> queue, List<T> endOfData, ExecutorService tasks,
+				InFlightLimiter limiter) {
+			this.queue = queue;
+			this.endOfData = endOfData;
+			this.tasks = tasks;
+			this.limiter = limiter;
+		}
+
+		/**
+		 * @return the number of writes of the list that failed.
+		 */
+		abstract int write(List<T> list) throws Exception;
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					final List<T> list = queue.take();
+					if (list == endOfData) {
+						break;
+					}
+					
+					limiter.acquire();
+					tasks.execute(new Runnable() {
+						@Override
+						public void run() {
+							int failures = 1;
+							try {
+								failures = write(list);
+							} catch (InterruptedException e) {
+								Thread.currentThread().interrupt();
+							} catch (Exception e) {
+								logger.error("Could not write a list of " + list.size(), e);
+							} finally {
+								listWritten(failures);
+								limiter.release();
+							}
+						}
+					});
+				}
+				
+				tasks.shutdown();
+				tasks.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				tasks.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
 		}
 	}
 	
@@ -0,0 +1,115 @@
+package com.datastax.refdata;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.refdata.model.ExchangeSymbol;
+
+/**
+ * Tracks the most recent date of every exchange symbol across a whole load, so exchange_metadata is written once
+ * per symbol instead of once per inserted list. Dates only ever move forward, whatever order the lists of a symbol
+ * are written in. Thread-safe.
+ */
+public class MetadataAggregator {
+
+	private static Logger logger = LoggerFactory.getLogger(MetadataAggregator.class);
+
+	private final ConcurrentMap<ExchangeSymbol, Long> lastUpdated = new ConcurrentHashMap<ExchangeSymbol, Long>();
+	private final ConcurrentMap<ExchangeSymbol, Long> flushed = new ConcurrentHashMap<ExchangeSymbol, Long>();
+	private ScheduledExecutorService flusher;
+
+	/**
+	 * Starts from the dates already in exchange_metadata, which are not written again unless a later date is added.
+	 */
+	public void seed(Map<ExchangeSymbol, Date> lastUpdatedDates) {
+		for (Map.Entry<ExchangeSymbol, Date> entry : lastUpdatedDates.entrySet()) {
+			update(entry.getKey(), entry.getValue().getTime());
+			flushed.put(entry.getKey(), entry.getValue().getTime());
+		}
+	}
+
+	/**
+	 * Records a date written for the exchange symbol, kept only if it is later than the one already held.
+	 */
+	public void update(ExchangeSymbol exchangeSymbol, long date) {
+		while (true) {
+			Long current = lastUpdated.putIfAbsent(exchangeSymbol, date);
+			if (current == null || current >= date || lastUpdated.replace(exchangeSymbol, current, date)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Writes the symbols whose date moved on since the last flush. If any write fails they are all written again by
+	 * the next flush.
+	 *
+	 * @return the number of symbols written.
+	 */
+	public synchronized int flush(ReferenceDao dao) throws Exception {
+		Map<ExchangeSymbol, Long> changed = new HashMap<ExchangeSymbol, Long>();
+		Map<ExchangeSymbol, Date> dates = new HashMap<ExchangeSymbol, Date>();
+		for (Map.Entry<ExchangeSymbol, Long> entry : lastUpdated.entrySet()) {
+			Long written = flushed.get(entry.getKey());
+			if (written == null || written < entry.getValue()) {
+				changed.put(entry.getKey(), entry.getValue());
+				dates.put(entry.getKey(), new Date(entry.getValue()));
+			}
+		}
+		if (dates.isEmpty()) {
+			return 0;
+		}
+
+		int failures = dao.insertLastUpdatedDates(dates);
+		if (failures > 0) {
+			logger.warn(failures + " of " + dates.size() + " last updated dates could not be written");
+			return dates.size() - failures;
+		}
+		flushed.putAll(changed);
+		return dates.size();
+	}
+
+	/**
+	 * Flushes every periodSeconds on a background thread until {@link #stopFlushing()}.
+	 */
+	public synchronized void startFlushing(final ReferenceDao dao, long periodSeconds) {
+		if (flusher != null) {
+			return;
+		}
+		flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "metadata-flusher");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		flusher.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					logger.info("Flushed the last updated dates of " + flush(dao) + " symbols");
+				} catch (Exception e) {
+					logger.warn("Could not flush the last updated dates", e);
+				}
+			}
+		}, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+	}
+
+	public synchronized void stopFlushing() {
+		if (flusher != null) {
+			flusher.shutdownNow();
+			flusher = null;
+		}
+	}
+}
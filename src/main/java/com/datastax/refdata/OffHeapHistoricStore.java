@@ -0,0 +1,389 @@
+package com.datastax.refdata;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import com.datastax.refdata.model.ExchangeSymbol;
+import com.datastax.refdata.model.HistoricData;
+import com.datastax.refdata.model.HistoricDataColumn;
+import com.datastax.refdata.model.HistoricDataQuery;
+import com.datastax.refdata.model.HistoricSeries;
+
+/**
+ * Historic data kept outside the heap, in direct buffers or in memory mapped files, so a full history can stay
+ * resident without adding to garbage collection.
+ * <p>
+ * Each exchange symbol is one block in a segment, laid out column by column with rows sorted by date descending:
+ *
+ * <pre>
+ * int rows, int unused, long[rows] dates, double[rows] open, high, low, close, adjClose, int[rows] volume
+ * </pre>
+ *
+ * An index maps each exchange symbol to its block. Range queries binary search the dates and read only the rows and
+ * columns they return. Writing a symbol again merges it with its block into a new one. Once the replaced blocks take
+ * more room than the live ones, and at least a segment, the live blocks are copied into new segments and the old
+ * segments are released, so the store stays within about twice its live data. Readers that still hold a replaced
+ * block keep its segment reachable until they are done. Reads are thread-safe, writes are serialized.
+ */
+public class OffHeapHistoricStore {
+
+	public static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+
+	private static final int HEADER_BYTES = 8;
+	private static final int ROW_BYTES = 8 + 8 * 6 + 4;
+
+	private final int segmentBytes;
+	private final File directory;
+	private final List<ByteBuffer> segments = new ArrayList<ByteBuffer>();
+	private final List<File> segmentFiles = new ArrayList<File>();
+	private final ConcurrentMap<ExchangeSymbol, Block> index = new ConcurrentHashMap<ExchangeSymbol, Block>();
+	private ByteBuffer current;
+	private long usedBytes;
+	private long liveBytes;
+	private int segmentsCreated;
+	private int compactions;
+
+	/**
+	 * Keeps the data in direct buffers of the default segment size.
+	 */
+	public OffHeapHistoricStore() {
+		this(null, DEFAULT_SEGMENT_BYTES);
+	}
+
+	/**
+	 * @param directory where to create the memory mapped segment files, or null to use direct buffers.
+	 */
+	public OffHeapHistoricStore(File directory, int segmentBytes) {
+		this.directory = directory;
+		this.segmentBytes = segmentBytes;
+		if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+			throw new IllegalArgumentException("Could not create " + directory);
+		}
+	}
+
+	/**
+	 * Writes the rows of one exchange symbol, merged with any rows already held for it.
+	 */
+	public void put(List<HistoricData> list) {
+		if (!list.isEmpty()) {
+			put(HistoricSeries.of(list));
+		}
+	}
+
+	public synchronized void put(HistoricSeries series) {
+		ExchangeSymbol exchangeSymbol = new ExchangeSymbol(series.getExchange(), series.getSymbol());
+		Block existing = index.get(exchangeSymbol);
+		if (existing != null) {
+			series = existing.toSeries(exchangeSymbol).merge(series);
+		}
+
+		int rows = series.size();
+		ByteBuffer segment = allocate(Block.bytes(rows));
+		int offset = segment.position();
+		segment.putInt(offset, rows);
+
+		Block block = new Block(segment, offset, rows);
+		for (int i = 0; i < rows; i++) {
+			segment.putLong(block.column(0) + i * 8, series.getDate(i));
+			segment.putDouble(block.column(1) + i * 8, series.getOpen(i));
+			segment.putDouble(block.column(2) + i * 8, series.getHigh(i));
+			segment.putDouble(block.column(3) + i * 8, series.getLow(i));
+			segment.putDouble(block.column(4) + i * 8, series.getClose(i));
+			segment.putDouble(block.column(5) + i * 8, series.getAdjClose(i));
+			segment.putInt(block.column(6) + i * 4, series.getVolume(i));
+		}
+		segment.position(offset + block.bytes());
+		usedBytes += block.bytes();
+		liveBytes += block.bytes() - (existing == null ? 0 : existing.bytes());
+
+		index.put(exchangeSymbol, block);
+
+		if (usedBytes - liveBytes > Math.max(liveBytes, segmentBytes)) {
+			compact();
+		}
+	}
+
+	/**
+	 * Copies the live blocks into new segments and releases the old ones, replaced blocks are left behind.
+	 */
+	private void compact() {
+		List<File> oldFiles = new ArrayList<File>(segmentFiles);
+		segments.clear();
+		segmentFiles.clear();
+		current = null;
+		usedBytes = 0;
+
+		for (Map.Entry<ExchangeSymbol, Block> entry : index.entrySet()) {
+			Block block = entry.getValue();
+			ByteBuffer segment = allocate(block.bytes());
+			int offset = segment.position();
+
+			ByteBuffer source = block.segment.duplicate();
+			source.limit(block.offset + block.bytes()).position(block.offset);
+			segment.put(source);
+			usedBytes += block.bytes();
+
+			// Readers see either block, both hold the same rows
+			index.put(entry.getKey(), new Block(segment, offset, block.rows));
+		}
+		compactions++;
+
+		// Mapped files can be deleted while still mapped, the mapping goes once the last reader lets go of it
+		for (File file : oldFiles) {
+			if (!file.delete()) {
+				file.deleteOnExit();
+			}
+		}
+	}
+
+	/**
+	 * Fills the store from a full scan of the dao. Each scanning thread collects the rows of the partition it is
+	 * reading and writes them once the next partition starts.
+	 *
+	 * @return the number of rows scanned.
+	 */
+	public long loadFrom(ReferenceDao dao, int splits, int concurrency, int fetchSize) throws InterruptedException,
+			ExecutionException {
+		final ConcurrentMap<Thread, HistoricSeries.Builder> partitions = new ConcurrentHashMap<Thread, HistoricSeries.Builder>();
+
+		List<ScanRange> ranges = dao.scanHistoricData(splits, concurrency, fetchSize, new HistoricDataConsumer() {
+			@Override
+			public void accept(HistoricData row) {
+				HistoricSeries.Builder partition = partitions.get(Thread.currentThread());
+				if (partition == null || !partition.getSymbol().equals(row.getSymbol())
+						|| !partition.getExchange().equals(row.getExchange())) {
+					if (partition != null) {
+						put(partition.build());
+					}
+					partition = new HistoricSeries.Builder(row.getExchange(), row.getSymbol());
+					partitions.put(Thread.currentThread(), partition);
+				}
+				partition.add(row);
+			}
+		});
+		for (HistoricSeries.Builder partition : partitions.values()) {
+			put(partition.build());
+		}
+
+		long rows = 0;
+		for (ScanRange range : ranges) {
+			rows += range.getRows();
+		}
+		return rows;
+	}
+
+	/**
+	 * @return the exchange symbol's rows within the query's date range, most recent first, holding only the
+	 *         projected columns. Rows are read from the block as the iterator is consumed.
+	 */
+	public Iterator<HistoricData> select(final HistoricDataQuery query) {
+		final ExchangeSymbol exchangeSymbol = query.getExchangeSymbol();
+		final Block block = index.get(exchangeSymbol);
+		if (block == null) {
+			return Collections.<HistoricData> emptyList().iterator();
+		}
+
+		// Rows are sorted by date descending, so the range runs from 'to' down to 'from'
+		final int first = query.getTo() == null ? 0 : block.countFrom(query.getTo().getTime());
+		int end = query.getFrom() == null ? block.rows : block.countFrom(query.getFrom().getTime());
+		if (query.getLimit() > 0) {
+			end = Math.min(end, first + query.getLimit());
+		}
+		final int last = end;
+
+		return new Iterator<HistoricData>() {
+			private int next = first;
+
+			@Override
+			public boolean hasNext() {
+				return next < last;
+			}
+
+			@Override
+			public HistoricData next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return block.read(exchangeSymbol, next++, query.getColumns());
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * @return every row of the exchange symbol copied onto the heap, or null if there are none.
+	 */
+	public HistoricSeries get(ExchangeSymbol exchangeSymbol) {
+		Block block = index.get(exchangeSymbol);
+		return block == null ? null : block.toSeries(exchangeSymbol);
+	}
+
+	public int getRowCount(ExchangeSymbol exchangeSymbol) {
+		Block block = index.get(exchangeSymbol);
+		return block == null ? 0 : block.rows;
+	}
+
+	public Set<ExchangeSymbol> getExchangeSymbols() {
+		return Collections.unmodifiableSet(index.keySet());
+	}
+
+	/**
+	 * @return the bytes written to blocks, including blocks replaced by later writes since the last compaction.
+	 */
+	public synchronized long getUsedBytes() {
+		return usedBytes;
+	}
+
+	/**
+	 * @return the bytes of the blocks the index points at.
+	 */
+	public synchronized long getLiveBytes() {
+		return liveBytes;
+	}
+
+	/**
+	 * @return the number of times the live blocks were copied to new segments to release the replaced ones.
+	 */
+	public synchronized int getCompactions() {
+		return compactions;
+	}
+
+	public synchronized long getAllocatedBytes() {
+		long allocated = 0;
+		for (ByteBuffer segment : segments) {
+			allocated += segment.capacity();
+		}
+		return allocated;
+	}
+
+	private ByteBuffer allocate(int bytes) {
+		if (current == null || current.remaining() < bytes) {
+			current = newSegment(Math.max(bytes, segmentBytes));
+			segments.add(current);
+		}
+		return current;
+	}
+
+	private ByteBuffer newSegment(int bytes) {
+		if (directory == null) {
+			return ByteBuffer.allocateDirect(bytes);
+		}
+
+		// Numbered across compactions, so a new segment never reuses the file of one still being read
+		File file = new File(directory, "segment-" + segmentsCreated++ + ".dat");
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				// The mapping stays valid after the channel is closed
+				ByteBuffer segment = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+				segmentFiles.add(file);
+				return segment;
+			} finally {
+				raf.close();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Could not map " + file, e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "OffHeapHistoricStore [symbols=" + index.size() + ", usedBytes=" + getUsedBytes() + ", liveBytes="
+				+ getLiveBytes() + ", segments=" + segments.size() + "]";
+	}
+
+	private static class Block {
+
+		private final ByteBuffer segment;
+		private final int offset;
+		private final int rows;
+
+		Block(ByteBuffer segment, int offset, int rows) {
+			this.segment = segment;
+			this.offset = offset;
+			this.rows = rows;
+		}
+
+		static int bytes(int rows) {
+			return HEADER_BYTES + rows * ROW_BYTES;
+		}
+
+		int bytes() {
+			return bytes(rows);
+		}
+
+		/**
+		 * @return the offset of the column, the columns before it are all 8 bytes wide.
+		 */
+		int column(int column) {
+			return offset + HEADER_BYTES + column * rows * 8;
+		}
+
+		long date(int row) {
+			return segment.getLong(column(0) + row * 8);
+		}
+
+		double getDouble(int column, int row) {
+			return segment.getDouble(column(column) + row * 8);
+		}
+
+		int volume(int row) {
+			return segment.getInt(column(6) + row * 4);
+		}
+
+		/**
+		 * @return the number of leading rows dated on or after the date.
+		 */
+		int countFrom(long date) {
+			int low = 0;
+			int high = rows;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (date(mid) >= date) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+
+		HistoricData read(ExchangeSymbol exchangeSymbol, int row, Set<HistoricDataColumn> columns) {
+			return new HistoricData(exchangeSymbol.getExchange(), exchangeSymbol.getSymbol(), new Date(date(row)),
+					columns.contains(HistoricDataColumn.OPEN) ? getDouble(1, row) : Double.NaN,
+					columns.contains(HistoricDataColumn.HIGH) ? getDouble(2, row) : Double.NaN,
+					columns.contains(HistoricDataColumn.LOW) ? getDouble(3, row) : Double.NaN,
+					columns.contains(HistoricDataColumn.CLOSE) ? getDouble(4, row) : Double.NaN,
+					columns.contains(HistoricDataColumn.VOLUME) ? volume(row) : 0,
+					columns.contains(HistoricDataColumn.ADJ_CLOSE) ? getDouble(5, row) : Double.NaN);
+		}
+
+		HistoricSeries toSeries(ExchangeSymbol exchangeSymbol) {
+			HistoricSeries.Builder builder = new HistoricSeries.Builder(exchangeSymbol.getExchange(),
+					exchangeSymbol.getSymbol(), rows);
+			for (int i = 0; i < rows; i++) {
+				builder.add(date(i), getDouble(1, i), getDouble(2, i), getDouble(3, i), getDouble(4, i), volume(i),
+						getDouble(5, i));
+			}
+			return builder.build();
+		}
+	}
+}
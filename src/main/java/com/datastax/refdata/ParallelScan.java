@@ -0,0 +1,52 @@
+package com.datastax.refdata;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Scans a list of token ranges on a fixed pool, one range per task, and times each range.
+ */
+abstract class ParallelScan {
+
+	private static Logger logger = LoggerFactory.getLogger(ParallelScan.class);
+
+	/**
+	 * Reads every row of the range.
+	 * 
+	 * @return the number of rows read.
+	 */
+	protected abstract long scan(ScanRange range);
+
+	public List<ScanRange> run(List<ScanRange> ranges, int concurrency) throws InterruptedException,
+			ExecutionException {
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+		List<Future<?>> futures = new ArrayList<Future<?>>(ranges.size());
+
+		try {
+			for (final ScanRange range : ranges) {
+				futures.add(executor.submit(new Runnable() {
+					@Override
+					public void run() {
+						long start = System.currentTimeMillis();
+						long rows = scan(range);
+						range.completed(rows, System.currentTimeMillis() - start);
+						logger.debug("Scanned " + range);
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return ranges;
+	}
+}
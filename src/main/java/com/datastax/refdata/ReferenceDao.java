@@ -1,185 +1,149 @@
 package com.datastax.refdata;
 
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import com.datastax.driver.core.BoundStatement;
-import com.datastax.driver.core.Cluster;
-import com.datastax.driver.core.ConsistencyLevel;
-import com.datastax.driver.core.PreparedStatement;
-import com.datastax.driver.core.ResultSet;
-import com.datastax.driver.core.ResultSetFuture;
-import com.datastax.driver.core.Row;
-import com.datastax.driver.core.Session;
-import com.datastax.driver.core.SimpleStatement;
-import com.datastax.driver.core.Statement;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import com.datastax.refdata.metrics.Metrics;
 import com.datastax.refdata.model.Dividend;
 import com.datastax.refdata.model.ExchangeSymbol;
 import com.datastax.refdata.model.HistoricData;
-
-public class ReferenceDao {
-	
-	private static Logger logger = LoggerFactory.getLogger(ReferenceDao.class);
-
-	private AtomicLong TOTAL_POINTS = new AtomicLong(0);
-	private Session session;
-	private static String keyspaceName = "datastax_referencedata_demo";
-	private static String tableNameHistoric = keyspaceName + ".historic_data";
-	private static String tableNameDividends = keyspaceName + ".dividends";
-	private static String tableNameMetaData = keyspaceName + ".exchange_metadata";
-
-	private static final String INSERT_INTO_HISTORIC = "Insert into " + tableNameHistoric
-			+ " (exchange,symbol,date,open,high,low,close,volume,adj_close) values (?,?,?,?,?,?,?,?,?);";
-	private static final String INSERT_INTO_DIVIDENDS = "Insert into " + tableNameDividends
-			+ " (exchange,symbol,date,dividend) values (?,?,?,?);";
-	private static final String INSERT_INTO_METADATA = "Insert into " + tableNameMetaData
-			+ " (exchange,symbol,last_updated_date) values (?,?,?);";
-	
-	
-	private static final String SELECT_ALL = "select * from " + tableNameHistoric;
-	private static final String SELECT_ALL_BY_KEY = "select * from " + tableNameHistoric + " where exchange=? and symbol=? and date > '2009-10-29'";
-
-	private PreparedStatement insertStmtHistoric;
-	private PreparedStatement insertStmtDividend;
-	private PreparedStatement insertStmtMetaData;
-	private PreparedStatement selectStmtByKey;
-
-	private AtomicInteger requestCount = new AtomicInteger(0);
-
-	public ReferenceDao(String[] contactPoints) {
-
-		Cluster cluster = Cluster.builder().addContactPoints(contactPoints).build();
-		this.session = cluster.connect();
-
-		this.insertStmtHistoric = session.prepare(INSERT_INTO_HISTORIC);
-		this.insertStmtDividend = session.prepare(INSERT_INTO_DIVIDENDS);
-		this.insertStmtMetaData = session.prepare(INSERT_INTO_METADATA);
-		this.selectStmtByKey = session.prepare(SELECT_ALL_BY_KEY);
-		
-		this.insertStmtHistoric.setConsistencyLevel(ConsistencyLevel.ONE);
-		this.insertStmtDividend.setConsistencyLevel(ConsistencyLevel.ONE);
-		this.insertStmtMetaData.setConsistencyLevel(ConsistencyLevel.ONE);
-	}
-
-	public void insertHistoricData(List<HistoricData> list) throws Exception{
-		BoundStatement boundStmt = new BoundStatement(this.insertStmtHistoric);
-		List<ResultSetFuture> results = new ArrayList<ResultSetFuture>();
-
-		Date mostRecentDate = new Date(0);		
-		HistoricData mostRecent = null;
-		
-		for (HistoricData historicData : list) {
-
-			boundStmt.setString("exchange", historicData.getExchange());
-			boundStmt.setString("symbol", historicData.getSymbol());
-			boundStmt.setDate("date", historicData.getDate());
-			boundStmt.setDouble("open", historicData.getOpen());
-			boundStmt.setDouble("low", historicData.getLow());
-			boundStmt.setDouble("high", historicData.getHigh());
-			boundStmt.setDouble("close", historicData.getClose());
-			boundStmt.setInt("volume", historicData.getVolume());
-			boundStmt.setDouble("adj_close", historicData.getAdjClose());
-
-			results.add(session.executeAsync(boundStmt));
-			
-			if (historicData.getDate().after(mostRecentDate)){				
-				mostRecentDate = historicData.getDate();
-				mostRecent = historicData;
-			}
-						
-			TOTAL_POINTS.incrementAndGet();			
-		}
-
-		//Insert most recent date.
-		if (mostRecent != null){
-			BoundStatement boundMetaDataStmt = new BoundStatement(this.insertStmtMetaData);
-			boundMetaDataStmt.setString("exchange", mostRecent.getExchange());
-			boundMetaDataStmt.setString("symbol", mostRecent.getSymbol());
-			boundMetaDataStmt.setDate("last_updated_date", mostRecent.getDate());
-			results.add(session.executeAsync(boundMetaDataStmt));
-		}
-		
-		//Wait till we have everything back.
-		boolean wait = true;
-		while (wait) {
-			// start with getting out, if any results are not done, wait is
-			// true.
-			wait = false;
-			for (ResultSetFuture result : results) {
-				if (!result.isDone()) {
-					wait = true;
-					break;
-				}
-			}
-		}
-		return;
-	}
-	
-	public void insertDividend(List<Dividend> list) {
-		BoundStatement boundStmt = new BoundStatement(this.insertStmtDividend);
-		List<ResultSetFuture> results = new ArrayList<ResultSetFuture>();
-
-		for (Dividend dividend: list) {
-
-			boundStmt.setString("exchange", dividend.getExchange());
-			boundStmt.setString("symbol", dividend.getSymbol());
-			boundStmt.setDate("date", dividend.getDate());
-			boundStmt.setDouble("dividend", dividend.getDividend());
-
-			results.add(session.executeAsync(boundStmt));
-		}
-
-		//Wait till we have everything back.
-		boolean wait = true;
-		while (wait) {
-			wait = false;
-			for (ResultSetFuture result : results) {
-				if (!result.isDone()) {
-					wait = true;
-					break;
-				}
-			}
-		}
-		return;
-	}
-	
-	public void selectAllHistoricData(int fetchSize){
-		Statement stmt = new SimpleStatement(SELECT_ALL);
-		stmt.setFetchSize(fetchSize);
-		ResultSet rs = session.execute(stmt);
-		
-		Iterator<Row> iterator = rs.iterator();
-		
-		while (iterator.hasNext()){
-			iterator.next().getDouble("close");
-		}		
-	}
-	
-	public long getTotalPoints(){
-		return TOTAL_POINTS.get();
-	}
-	
-	public int getRequestCount(){
-		return this.requestCount.get();
-	}
-
-	public void selectAllHistoricData(ExchangeSymbol exchangeSymbol) {
-		requestCount.incrementAndGet(); 
-		
-		BoundStatement bound = new BoundStatement(selectStmtByKey);
-		
-		ResultSetFuture results = session.executeAsync(bound.bind(exchangeSymbol.getExchange(), exchangeSymbol.getSymbol())); 
-		
-		for (Row row : results.getUninterruptibly()) {			
-			row.getString("symbol");			
-		}
-	}
-
+import com.datastax.refdata.model.HistoricDataQuery;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Storage for historic data, dividends and the exchange metadata, see create_schema.cql for the layout.
+ */
+public interface ReferenceDao {
+
+	/**
+	 * Inserts the list, which holds the rows of one exchange symbol, and updates the symbol's last updated date, or
+	 * hands it to the metadata aggregator when one is set. Blocks until every write has completed.
+	 * 
+	 * @return the number of writes that failed.
+	 */
+	public int insertHistoricData(List<HistoricData> list) throws InterruptedException, ExecutionException;
+
+	/**
+	 * Inserts the list without waiting for the writes to complete. May block while the store is applying
+	 * backpressure.
+	 * 
+	 * @return a future that completes once every write has completed, with the number of writes that failed.
+	 */
+	public ListenableFuture<Integer> insertHistoricDataAsync(List<HistoricData> list) throws InterruptedException;
+
+	/**
+	 * Upserts the last updated dates into the exchange metadata and blocks until every write has completed.
+	 * 
+	 * @return the number of writes that failed.
+	 */
+	public int insertLastUpdatedDates(Map<ExchangeSymbol, Date> lastUpdatedDates) throws InterruptedException,
+			ExecutionException;
+
+	/**
+	 * Sends the last updated date of every inserted historic data list to the aggregator instead of writing it, the
+	 * aggregator writes them when it is flushed. Null writes them with every list again.
+	 */
+	public void setMetadataAggregator(MetadataAggregator aggregator);
+
+	/**
+	 * Reports the latency and outcome of every write to the controller, and puts the limit on writes in flight
+	 * under its control where the dao has one.
+	 */
+	public void setConcurrencyController(AdaptiveConcurrencyController controller);
+
+	/**
+	 * Inserts the list and blocks until every write has completed.
+	 * 
+	 * @return the number of writes that failed.
+	 */
+	public int insertDividend(List<Dividend> list) throws InterruptedException, ExecutionException;
+
+	/**
+	 * Inserts the list without waiting for the writes to complete. May block while the store is applying
+	 * backpressure.
+	 * 
+	 * @return a future that completes once every write has completed, with the number of writes that failed.
+	 */
+	public ListenableFuture<Integer> insertDividendAsync(List<Dividend> list) throws InterruptedException;
+
+	/**
+	 * Reads every historic data row, fetchSize rows at a time.
+	 */
+	public void selectAllHistoricData(int fetchSize);
+
+	/**
+	 * Reads every historic data row by splitting the token ring into the given number of ranges and scanning up to
+	 * concurrency ranges at a time, fetchSize rows per page. Rows are handed to the consumer from the scanning
+	 * threads. Blocks until every range has been scanned.
+	 * 
+	 * @return the scanned ranges with the rows each returned and the time each took.
+	 */
+	public List<ScanRange> scanHistoricData(int splits, int concurrency, int fetchSize, HistoricDataConsumer consumer)
+			throws InterruptedException, ExecutionException;
+
+	/**
+	 * Reads the recent historic data of one exchange symbol.
+	 */
+	public void selectAllHistoricData(ExchangeSymbol exchangeSymbol);
+
+	/**
+	 * Reads the recent historic data of every exchange symbol, keeping at most maxConcurrent reads in flight, and
+	 * hands each symbol's rows to the handler as soon as they arrive. May block while maxConcurrent reads are in
+	 * flight.
+	 * 
+	 * @return a future that completes once every symbol has been handled, with the number of reads that failed.
+	 */
+	public ListenableFuture<Integer> selectAllHistoricData(List<ExchangeSymbol> exchangeSymbols, int maxConcurrent,
+			HistoricDataHandler handler) throws InterruptedException;
+
+	/**
+	 * Reads one exchange symbol's historic data as described by the query, most recent first. Rows are fetched a page
+	 * at a time while the iterator is consumed.
+	 */
+	public Iterator<HistoricData> selectHistoricData(HistoricDataQuery query);
+
+	/**
+	 * @return the most recent historic data row of the exchange symbol, or null if there is none.
+	 */
+	public HistoricData selectLatestHistoricData(ExchangeSymbol exchangeSymbol);
+
+	/**
+	 * @return the exchange symbol's last updated date from the exchange metadata, or null if there is none.
+	 */
+	public Date selectLastUpdatedDate(ExchangeSymbol exchangeSymbol);
+
+	/**
+	 * Reads the whole exchange metadata table.
+	 * 
+	 * @return the last updated date of every exchange symbol.
+	 */
+	public Map<ExchangeSymbol, Date> selectAllLastUpdatedDates();
+
+	public long getTotalPoints();
+
+	public long getTotalDividends();
+
+	public long getFailedWrites();
+
+	public long getWriteRequests();
+
+	/**
+	 * @return the write requests that carried historic data rows, single rows or batches, out of
+	 *         {@link #getWriteRequests()}.
+	 */
+	public long getHistoricWriteRequests();
+
+	public int getWritesInFlight();
+
+	public int getRequestCount();
+
+	/**
+	 * @return latency and throughput metrics of the inserts, metadata upserts and reads.
+	 */
+	public Metrics getMetrics();
+
+	public void close();
 }
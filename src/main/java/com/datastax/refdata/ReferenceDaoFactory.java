@@ -0,0 +1,35 @@
+package com.datastax.refdata;
+
+/**
+ * Creates the ReferenceDao selected by the store property, either {@link #STORE_CASSANDRA} (default) or
+ * {@link #STORE_MEMORY}.
+ */
+public class ReferenceDaoFactory {
+
+	public static final String STORE_CASSANDRA = "cassandra";
+	public static final String STORE_MEMORY = "memory";
+
+	private ReferenceDaoFactory() {
+	}
+
+	public static ReferenceDao create(String store, String[] contactPoints, int maxInFlight, int batchRows,
+			int batchBytes) {
+		if (STORE_MEMORY.equalsIgnoreCase(store)) {
+			return new InMemoryReferenceDao();
+		}
+		if (!STORE_CASSANDRA.equalsIgnoreCase(store)) {
+			throw new IllegalArgumentException("Unknown store " + store + ", use " + STORE_CASSANDRA + " or "
+					+ STORE_MEMORY);
+		}
+		CassandraReferenceDao dao = new CassandraReferenceDao(contactPoints, maxInFlight);
+		dao.setBatching(batchRows, batchBytes);
+		return dao;
+	}
+
+	/**
+	 * Puts a read-through cache of cacheSize symbols in front of the dao, or returns the dao as is if cacheSize is 0.
+	 */
+	public static ReferenceDao withCache(ReferenceDao dao, long cacheSize, long cacheTtlSeconds) {
+		return cacheSize > 0 ? new CachingReferenceDao(dao, cacheSize, cacheTtlSeconds) : dao;
+	}
+}
@@ -1,10 +1,14 @@
 package com.datastax.refdata;
 
+import java.io.File;
+import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
@@ -14,7 +18,12 @@ import org.slf4j.LoggerFactory;
 
 import com.datastax.demo.utils.PropertyHelper;
 import com.datastax.demo.utils.Timer;
+import com.datastax.refdata.csv.DateDecoder;
+import com.datastax.refdata.model.Dividend;
 import com.datastax.refdata.model.ExchangeSymbol;
+import com.datastax.refdata.model.HistoricData;
+import com.datastax.refdata.model.HistoricDataColumn;
+import com.datastax.refdata.model.HistoricDataQuery;
 
 public class RunQueries {
 	
@@ -25,11 +34,38 @@ public class RunQueries {
 
 	private AtomicLong TOTAL_POINTS = new AtomicLong(0);
 	
+	// Poison pill, compared by identity, telling a reader there are no more symbols.
+	private static final ExchangeSymbol END_OF_SYMBOLS = new ExchangeSymbol("", "");
+	
 	public RunQueries() {
 
 		String contactPointsStr = PropertyHelper.getProperty("contactPoints", "localhost");
+		String store = PropertyHelper.getProperty("store", ReferenceDaoFactory.STORE_CASSANDRA);
+		String metricsPeriodStr = PropertyHelper.getProperty("metricsPeriod", "10");
+		String metricsFile = PropertyHelper.getProperty("metricsFile", null);
+		String maxConcurrentReadsStr = PropertyHelper.getProperty("maxConcurrentReads", "128");
+		String cacheSizeStr = PropertyHelper.getProperty("cacheSize", "10000");
+		String cacheTtlSecondsStr = PropertyHelper.getProperty("cacheTtlSeconds", "60");
+		String scanSplitsStr = PropertyHelper.getProperty("scanSplits", "64");
+		String scanConcurrencyStr = PropertyHelper.getProperty("scanConcurrency", "8");
+		String scanFetchSizeStr = PropertyHelper.getProperty("scanFetchSize", "5000");
+		String offHeapDir = PropertyHelper.getProperty("offHeapDir", null);
+		String offHeapSegmentMbStr = PropertyHelper.getProperty("offHeapSegmentMb", "64");
+		String threadMode = PropertyHelper.getProperty("threadMode", VirtualThreads.MODE_PLATFORM);
+		String virtualThreadLimitStr = PropertyHelper.getProperty("virtualThreadLimit", "1024");
+		
+		if (VirtualThreads.MODE_VIRTUAL.equalsIgnoreCase(threadMode)) {
+			VirtualThreads.checkAvailable();
+		}
+		
+		ReferenceDao dao = ReferenceDaoFactory.withCache(
+				ReferenceDaoFactory.create(store, contactPointsStr.split(","), 1024, 1, 5 * 1024),
+				Long.parseLong(cacheSizeStr), Long.parseLong(cacheTtlSecondsStr));
+		dao.getMetrics().startReporting(Long.parseLong(metricsPeriodStr));
 		
-		ReferenceDao dao = new ReferenceDao(contactPointsStr.split(","));
+		if (ReferenceDaoFactory.STORE_MEMORY.equalsIgnoreCase(store)) {
+			this.loadCsvFiles(dao);
+		}
 		
 		List<ExchangeSymbol> exchangeSymbols = new DataLoader(null, null).getExchangeSymbols();
 		logger.info("Symbols to fetch : " + exchangeSymbols.size());
@@ -40,19 +76,57 @@ public class RunQueries {
 		timer.end();
 		
 		logger.info("Select * took : " + timer.getTimeTakenSeconds() + "secs for fetchsize : " + fetchSize);
-				
-		for (int i = 0; i < noOfThreads; i++) {
-			executor.execute(new ReaderThread(dao, queue));
-		}
-		
-		timer = new Timer();		
 		
-		for (ExchangeSymbol exchangeSymbol : exchangeSymbols){
+		// The same full read split into token ranges scanned in parallel
+		final AtomicLong scannedRows = new AtomicLong(0);
+		timer = new Timer();
+		try {
+			List<ScanRange> ranges = dao.scanHistoricData(Integer.parseInt(scanSplitsStr),
+					Integer.parseInt(scanConcurrencyStr), Integer.parseInt(scanFetchSizeStr),
+					new HistoricDataConsumer() {
+						@Override
+						public void accept(HistoricData row) {
+							scannedRows.incrementAndGet();
+						}
+					});
+			timer.end();
+			
+			for (ScanRange range : ranges) {
+				logger.info("Scanned range (" + range.getStart() + ", " + range.getEnd() + "] : " + range.getRows()
+						+ " rows in " + range.getMillis() + "ms, " + rowsPerSecond(range.getRows(), range.getMillis())
+						+ " rows/sec");
+			}
+			logger.info("Token range scan took : " + timer.getTimeTakenMillis() + "ms for " + scannedRows.get()
+					+ " rows in " + ranges.size() + " ranges, "
+					+ rowsPerSecond(scannedRows.get(), timer.getTimeTakenMillis()) + " rows/sec with "
+					+ scanConcurrencyStr + " concurrent ranges");
+		} catch (Exception e) {
+			logger.warn("Token range scan failed", e);
+		}
+				
+		if (VirtualThreads.MODE_VIRTUAL.equalsIgnoreCase(threadMode)) {
+			// Every symbol is read on its own thread instead of by a pool of readers
+			executor.shutdown();
+			executor = VirtualThreads.newThreadPerTaskExecutor("reader");
+			timer = new Timer();
+			this.readOnePerThread(dao, exchangeSymbols, new InFlightLimiter(Integer.parseInt(virtualThreadLimitStr)));
+		} else {
+			for (int i = 0; i < noOfThreads; i++) {
+				executor.execute(new ReaderThread(dao, queue));
+			}
+			
+			timer = new Timer();		
 			
 			try {
-				queue.put(exchangeSymbol);
+				for (ExchangeSymbol exchangeSymbol : exchangeSymbols){
+					queue.put(exchangeSymbol);
+				}
+				for (int i = 0; i < noOfThreads; i++) {
+					queue.put(END_OF_SYMBOLS);
+				}
 			} catch (InterruptedException e) {
-				e.printStackTrace();
+				logger.warn("Interrupted while queueing the symbols to read");
+				Thread.currentThread().interrupt();
 			}
 		}
 				
@@ -60,14 +134,160 @@ public class RunQueries {
 		try {
 			executor.awaitTermination(1, TimeUnit.MINUTES);
 		} catch (InterruptedException e) {
-			e.printStackTrace();
+			logger.warn("Interrupted while waiting for the readers to finish");
+			Thread.currentThread().interrupt();
 		}
 		timer.end();
 		
 		logger.info("Select * by key took : " + timer.getTimeTakenSeconds() + "secs for " + dao.getRequestCount() + " requests	");
+		
+		// All symbols through the bulk read, bounded by in flight reads instead of reader threads
+		final AtomicLong bulkRows = new AtomicLong(0);
+		timer = new Timer();
+		try {
+			int failures = dao.selectAllHistoricData(exchangeSymbols, Integer.parseInt(maxConcurrentReadsStr),
+					new HistoricDataHandler() {
+						@Override
+						public void onResult(ExchangeSymbol exchangeSymbol, List<HistoricData> rows) {
+							bulkRows.addAndGet(rows.size());
+						}
+
+						@Override
+						public void onFailure(ExchangeSymbol exchangeSymbol, Throwable t) {
+							logger.warn("Could not read " + exchangeSymbol + " : " + t.getMessage());
+						}
+					}).get();
+			timer.end();
+			logger.info("Bulk read took : " + timer.getTimeTakenMillis() + "ms for " + exchangeSymbols.size()
+					+ " symbols, " + bulkRows.get() + " rows, " + failures + " failures with " + maxConcurrentReadsStr
+					+ " concurrent reads");
+		} catch (Exception e) {
+			logger.warn("Bulk read failed", e);
+		}
+		
+		// Close and volume of the last year of data for every symbol
+		Date from = new Date(new DateDecoder().parseMillis("2009-01-01"));
+		Date to = new Date(new DateDecoder().parseMillis("2010-01-01"));
+		long rows = 0;
+		
+		timer = new Timer();
+		for (ExchangeSymbol exchangeSymbol : exchangeSymbols) {
+			Iterator<HistoricData> iterator = dao.selectHistoricData(new HistoricDataQuery(exchangeSymbol).withRange(
+					from, to).withColumns(HistoricDataColumn.CLOSE, HistoricDataColumn.VOLUME));
+			while (iterator.hasNext()) {
+				iterator.next();
+				rows++;
+			}
+		}
+		timer.end();
+		
+		logger.info("Range query of close and volume took : " + timer.getTimeTakenMillis() + "ms for " + rows
+				+ " rows of " + exchangeSymbols.size() + " symbols");
+		
+		// The same range query against an off heap copy of the table, filled by a token range scan
+		OffHeapHistoricStore offHeapStore = new OffHeapHistoricStore(offHeapDir == null ? null : new File(offHeapDir),
+				Integer.parseInt(offHeapSegmentMbStr) * 1024 * 1024);
+		timer = new Timer();
+		try {
+			long loaded = offHeapStore.loadFrom(dao, Integer.parseInt(scanSplitsStr),
+					Integer.parseInt(scanConcurrencyStr), Integer.parseInt(scanFetchSizeStr));
+			timer.end();
+			logger.info("Off heap load took : " + timer.getTimeTakenMillis() + "ms for " + loaded + " rows, "
+					+ offHeapStore.getLiveBytes() / 1024 + "kb live, " + offHeapStore.getUsedBytes() / 1024 + "kb used of "
+					+ offHeapStore.getAllocatedBytes() / 1024 + "kb allocated");
+			
+			rows = 0;
+			timer = new Timer();
+			for (ExchangeSymbol exchangeSymbol : exchangeSymbols) {
+				Iterator<HistoricData> iterator = offHeapStore.select(new HistoricDataQuery(exchangeSymbol).withRange(
+						from, to).withColumns(HistoricDataColumn.CLOSE, HistoricDataColumn.VOLUME));
+				while (iterator.hasNext()) {
+					iterator.next();
+					rows++;
+				}
+			}
+			timer.end();
+			logger.info("Off heap range query of close and volume took : " + timer.getTimeTakenMillis() + "ms for "
+					+ rows + " rows of " + exchangeSymbols.size() + " symbols");
+		} catch (Exception e) {
+			logger.warn("Off heap load failed", e);
+		}
+		
+		// Latest price and last updated date of every symbol, twice, the second pass is served by the cache
+		for (int pass = 1; pass <= 2; pass++) {
+			timer = new Timer();
+			for (ExchangeSymbol exchangeSymbol : exchangeSymbols) {
+				dao.selectLatestHistoricData(exchangeSymbol);
+				dao.selectLastUpdatedDate(exchangeSymbol);
+			}
+			timer.end();
+			logger.info("Latest price and last updated date pass " + pass + " took : " + timer.getTimeTakenMillis()
+					+ "ms for " + exchangeSymbols.size() + " symbols");
+		}
+		dao.getMetrics().finishReporting(metricsFile);
+		
+		dao.close();
 		System.exit(0);
 	}
 
+	private static long rowsPerSecond(long rows, long millis) {
+		return millis == 0 ? rows * 1000 : rows * 1000 / millis;
+	}
+	
+	/**
+	 * Starts a read of each symbol on its own thread of the executor, waiting for a permit of the limiter before
+	 * each one so no more than its limit are read at a time.
+	 */
+	private void readOnePerThread(final ReferenceDao dao, List<ExchangeSymbol> exchangeSymbols,
+			final InFlightLimiter limiter) {
+		logger.info("Reading every symbol on its own thread, at most " + limiter.getLimit() + " at a time");
+		try {
+			for (final ExchangeSymbol exchangeSymbol : exchangeSymbols) {
+				limiter.acquire();
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							dao.selectAllHistoricData(exchangeSymbol);
+						} finally {
+							limiter.release();
+						}
+					}
+				});
+			}
+		} catch (InterruptedException e) {
+			logger.warn("Interrupted while starting the readers");
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Fills an empty store from the csv files so the queries can run without a cluster.
+	 */
+	private void loadCsvFiles(ReferenceDao dao) {
+		BlockingQueue<List<HistoricData>> queueHistoricData = new LinkedBlockingQueue<List<HistoricData>>();
+		BlockingQueue<List<Dividend>> queueDividend = new LinkedBlockingQueue<List<Dividend>>();
+		
+		Timer timer = new Timer();
+		DataLoader dataLoader = new DataLoader(queueHistoricData, queueDividend);
+		dataLoader.startProcessingData();
+		if (dataLoader.getFailedSources() > 0) {
+			throw new RuntimeException("Could not load the csv files", dataLoader.getFailure());
+		}
+		
+		try {
+			for (List<HistoricData> list : queueHistoricData) {
+				dao.insertHistoricData(list);
+			}
+			for (List<Dividend> list : queueDividend) {
+				dao.insertDividend(list);
+			}
+		} catch (Exception e) {
+			throw new RuntimeException("Could not load the csv files", e);
+		}
+		timer.end();
+		logger.info("Loaded " + dao.getTotalPoints() + " points into memory in " + timer.getTimeTakenMillis() + "ms");
+	}
 	
 	class ReaderThread implements Runnable {
 
@@ -82,13 +302,17 @@ public class RunQueries {
 		@Override
 		public void run() {			
 			while(true){				
-				ExchangeSymbol exchangeSymbol = queue.poll();
-				
-				if (exchangeSymbol!=null){
-					dao.selectAllHistoricData(exchangeSymbol);
-				}			
+				ExchangeSymbol exchangeSymbol;
+				try {
+					exchangeSymbol = queue.take();
+				} catch (InterruptedException e) {
+					return;
+				}
 				
-				if (queue.isEmpty()) break;
+				if (exchangeSymbol == END_OF_SYMBOLS) {
+					return;
+				}
+				dao.selectAllHistoricData(exchangeSymbol);
 			}				
 		}
 	}
@@ -0,0 +1,70 @@
+package com.datastax.refdata;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A (start, end] slice of the token ring scanned by {@link ReferenceDao#scanHistoricData}, with the rows it returned
+ * and how long it took.
+ */
+public class ScanRange {
+
+	private final long start;
+	private final long end;
+	private long rows;
+	private long millis;
+
+	public ScanRange(long start, long end) {
+		this.start = start;
+		this.end = end;
+	}
+
+	/**
+	 * Splits the whole Murmur3 token ring, (Long.MIN_VALUE, Long.MAX_VALUE], into evenly sized ranges.
+	 */
+	public static List<ScanRange> split(int splits) {
+		BigInteger min = BigInteger.valueOf(Long.MIN_VALUE);
+		BigInteger width = BigInteger.valueOf(Long.MAX_VALUE).subtract(min);
+
+		List<ScanRange> ranges = new ArrayList<ScanRange>(splits);
+		long start = Long.MIN_VALUE;
+		for (int i = 1; i <= splits; i++) {
+			long end = i == splits ? Long.MAX_VALUE : min.add(
+					width.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(splits))).longValue();
+			ranges.add(new ScanRange(start, end));
+			start = end;
+		}
+		return ranges;
+	}
+
+	public long getStart() {
+		return start;
+	}
+
+	public long getEnd() {
+		return end;
+	}
+
+	public long getRows() {
+		return rows;
+	}
+
+	public long getMillis() {
+		return millis;
+	}
+
+	void completed(long rows, long millis) {
+		this.rows = rows;
+		this.millis = millis;
+	}
+
+	public boolean contains(long token) {
+		return token > start && token <= end;
+	}
+
+	@Override
+	public String toString() {
+		return "ScanRange [start=" + start + ", end=" + end + ", rows=" + rows + ", millis=" + millis + "]";
+	}
+}
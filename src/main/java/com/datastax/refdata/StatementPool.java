@@ -0,0 +1,69 @@
+package com.datastax.refdata;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.PreparedStatement;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Recycles BoundStatements of one PreparedStatement. A statement must only be released once the request using it
+ * has completed, the driver keeps a reference to its values until then. Writes complete on the driver's I/O threads,
+ * so the pool is a shared lock-free queue rather than one pool per writer thread.
+ * 
+ * Callers must bind every value of a borrowed statement, values of its previous use are not cleared.
+ */
+class StatementPool {
+
+	private final PreparedStatement prepared;
+	private final int maxIdle;
+	private final ConcurrentLinkedQueue<BoundStatement> idle = new ConcurrentLinkedQueue<BoundStatement>();
+	private final AtomicInteger idleCount = new AtomicInteger(0);
+
+	StatementPool(PreparedStatement prepared, int maxIdle) {
+		this.prepared = prepared;
+		this.maxIdle = maxIdle;
+	}
+
+	BoundStatement borrow() {
+		BoundStatement statement = idle.poll();
+		if (statement == null) {
+			return new BoundStatement(prepared);
+		}
+		idleCount.decrementAndGet();
+		return statement;
+	}
+
+	void release(BoundStatement statement) {
+		if (idleCount.incrementAndGet() <= maxIdle) {
+			idle.offer(statement);
+		} else {
+			idleCount.decrementAndGet();
+		}
+	}
+
+	<F extends ListenableFuture<?>> F releaseOnCompletion(F future, final BoundStatement statement) {
+		future.addListener(new Runnable() {
+			@Override
+			public void run() {
+				release(statement);
+			}
+		}, MoreExecutors.sameThreadExecutor());
+		return future;
+	}
+
+	<F extends ListenableFuture<?>> F releaseOnCompletion(F future, final List<BoundStatement> statements) {
+		future.addListener(new Runnable() {
+			@Override
+			public void run() {
+				for (BoundStatement statement : statements) {
+					release(statement);
+				}
+			}
+		}, MoreExecutors.sameThreadExecutor());
+		return future;
+	}
+}
@@ -0,0 +1,80 @@
+package com.datastax.refdata;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Executors that start a new virtual thread for every task. Virtual threads need Java 21 or later. They are looked up
+ * by reflection, so the project still builds and runs on Java 17. On an older JVM, asking for virtual threads fails
+ * with a clear error rather than quietly falling back to platform threads. Callers bound the number of tasks running
+ * at once themselves, usually with an {@link InFlightLimiter}.
+ * <p>
+ * The build targets Java 17, so VirtualThreadsTest only exercises the virtual thread path when the tests run on
+ * Java 21 or later, and skips it otherwise.
+ */
+public class VirtualThreads {
+
+	public static final String MODE_PLATFORM = "platform";
+	public static final String MODE_VIRTUAL = "virtual";
+
+	private static final Method OF_VIRTUAL = method(Thread.class, "ofVirtual");
+	private static final Method NEW_THREAD_PER_TASK_EXECUTOR = method(Executors.class, "newThreadPerTaskExecutor",
+			ThreadFactory.class);
+
+	private VirtualThreads() {
+	}
+
+	public static boolean isAvailable() {
+		return virtualThreadFactory("probe-") != null;
+	}
+
+	/**
+	 * Fails fast when virtual threads were asked for on a JVM without them, before anything has been started.
+	 */
+	public static void checkAvailable() {
+		if (!isAvailable()) {
+			throw new IllegalStateException("threadMode=" + MODE_VIRTUAL + " needs Java 21 or later, this is Java "
+					+ System.getProperty("java.version") + ". Use -DthreadMode=" + MODE_PLATFORM + " instead");
+		}
+	}
+
+	/**
+	 * @return an executor running every task on a new virtual thread named name-n.
+	 */
+	public static ExecutorService newThreadPerTaskExecutor(String name) {
+		checkAvailable();
+		try {
+			return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, virtualThreadFactory(name + "-"));
+		} catch (Exception e) {
+			throw new IllegalStateException("Could not create a virtual thread executor", e);
+		}
+	}
+
+	/**
+	 * @return Thread.ofVirtual().name(prefix, 0).factory(), or null if this JVM has no virtual threads or only has
+	 *         them as a preview feature that is not enabled.
+	 */
+	private static ThreadFactory virtualThreadFactory(String prefix) {
+		if (OF_VIRTUAL == null || NEW_THREAD_PER_TASK_EXECUTOR == null) {
+			return null;
+		}
+		try {
+			Object builder = OF_VIRTUAL.invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+			return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	private static Method method(Class<?> type, String name, Class<?>... parameterTypes) {
+		try {
+			return type.getMethod(name, parameterTypes);
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package com.datastax.refdata;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.datastax.demo.utils.PropertyHelper;
+import com.datastax.demo.utils.Timer;
+import com.datastax.refdata.model.Dividend;
+import com.datastax.refdata.model.HistoricData;
+import com.datastax.refdata.model.HistoricSeries;
+import com.datastax.refdata.snapshot.SnapshotCompression;
+import com.datastax.refdata.snapshot.SnapshotWriter;
+
+/**
+ * Parses the csv files once and writes them to a binary snapshot, which later loads read with -Dsnapshot instead of
+ * parsing the csv files again.
+ */
+public class WriteSnapshot {
+
+	private static Logger logger = LoggerFactory.getLogger(WriteSnapshot.class);
+
+	// Poison pills, compared by identity, telling a writer there is nothing more to write.
+	private static final List<HistoricData> END_OF_HISTORIC_DATA = new ArrayList<HistoricData>();
+	private static final List<Dividend> END_OF_DIVIDENDS = new ArrayList<Dividend>();
+
+	// The first failure of the load or a write, after it the writers only drain their queues and the snapshot is deleted
+	private volatile Exception failure;
+
+	public WriteSnapshot() {
+
+		String csvDir = PropertyHelper.getProperty("csvDir", "src/main/resources/csv");
+		String csvParser = PropertyHelper.getProperty("csvParser", DataLoader.PARSER_FAST);
+		String parserThreadsStr = PropertyHelper.getProperty("parserThreads", "1");
+		String dividendParserThreadsStr = PropertyHelper.getProperty("dividendParserThreads", "1");
+		String readMode = PropertyHelper.getProperty("readMode", DataLoader.READ_MODE_STREAM);
+		String chunkSizeMbStr = PropertyHelper.getProperty("chunkSizeMb", "64");
+		String snapshotFileStr = PropertyHelper.getProperty("snapshotFile", "refdata.snapshot");
+		String compressionStr = PropertyHelper.getProperty("snapshotCompression", "lz4");
+
+		BlockingQueue<List<HistoricData>> queueHistoricData = new ArrayBlockingQueue<List<HistoricData>>(10);
+		BlockingQueue<List<Dividend>> queueDividend = new ArrayBlockingQueue<List<Dividend>>(10);
+
+		DataLoader dataLoader = new DataLoader(queueHistoricData, queueDividend, Integer.parseInt(parserThreadsStr));
+		dataLoader.setDividendParserThreads(Integer.parseInt(dividendParserThreadsStr));
+		dataLoader.setCsvParser(csvParser);
+		dataLoader.setCsvDirectory(new File(csvDir));
+		dataLoader.setReadMode(readMode, Long.parseLong(chunkSizeMbStr) * 1024 * 1024);
+
+		File snapshotFile = new File(snapshotFileStr);
+		SnapshotWriter writer;
+		try {
+			writer = new SnapshotWriter(snapshotFile, SnapshotCompression.fromName(compressionStr));
+		} catch (IOException e) {
+			logger.error("Could not create snapshot : " + snapshotFile.getAbsolutePath(), e);
+			return;
+		}
+
+		Timer timer = new Timer();
+		timer.start();
+
+		HistoricDataWriter historicDataWriter = new HistoricDataWriter(writer, queueHistoricData);
+		DividendWriter dividendWriter = new DividendWriter(writer, queueDividend);
+		Thread historicThread = new Thread(historicDataWriter, "snapshot-historic-data");
+		Thread dividendThread = new Thread(dividendWriter, "snapshot-dividends");
+		historicThread.start();
+		dividendThread.start();
+
+		dataLoader.startProcessingData();
+		if (dataLoader.getFailedSources() > 0) {
+			// The loader has logged every failure with its stack trace already
+			failed("Could not read " + dataLoader.getFailedSources() + " csv files or chunks, abandoning the snapshot."
+					+ " First failure : " + dataLoader.getFailure(), null);
+		}
+
+		try {
+			queueHistoricData.put(END_OF_HISTORIC_DATA);
+			queueDividend.put(END_OF_DIVIDENDS);
+			historicThread.join();
+			dividendThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			failed("Interrupted before every list was written, abandoning the snapshot", e);
+		}
+
+		try {
+			writer.close();
+		} catch (IOException e) {
+			failed("Could not close the snapshot, abandoning it", e);
+		}
+		if (failure != null) {
+			// A partial snapshot would load without complaint, so none is left behind
+			if (!snapshotFile.delete()) {
+				logger.error("Could not delete the partial snapshot : " + snapshotFile.getAbsolutePath());
+			}
+			logger.error("Snapshot " + snapshotFile.getAbsolutePath() + " was not written");
+			return;
+		}
+		timer.end();
+
+		logger.info("Wrote " + historicDataWriter.rows + " points and " + dividendWriter.rows + " dividends to "
+				+ snapshotFile.getAbsolutePath() + " in " + timer.getTimeTakenMillis() + "ms, " + compressionStr
+				+ " compressed " + writer.getRawBytes() + " bytes to " + writer.getStoredBytes());
+	}
+
+	/**
+	 * Records the first failure, the snapshot is abandoned once the queues are drained. The exception is logged
+	 * unless it is null.
+	 */
+	private synchronized void failed(String message, Exception e) {
+		if (failure == null) {
+			logger.error(message, e);
+			failure = e != null ? e : new IOException(message);
+		}
+	}
+
+	class HistoricDataWriter implements Runnable {
+
+		private SnapshotWriter writer;
+		private BlockingQueue<List<HistoricData>> queue;
+		private long rows;
+
+		public HistoricDataWriter(SnapshotWriter writer, BlockingQueue<List<HistoricData>> queue) {
+			this.writer = writer;
+			this.queue = queue;
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				List<HistoricData> list;
+				try {
+					list = queue.take();
+				} catch (InterruptedException e) {
+					return;
+				}
+
+				if (list == END_OF_HISTORIC_DATA) {
+					return;
+				}
+
+				if (failure != null) {
+					continue;
+				}
+				try {
+					writer.writeHistoricData(HistoricSeries.of(list));
+					rows += list.size();
+				} catch (Exception e) {
+					failed("Could not write to the snapshot, abandoning it", e);
+				}
+			}
+		}
+	}
+
+	class DividendWriter implements Runnable {
+
+		private SnapshotWriter writer;
+		private BlockingQueue<List<Dividend>> queue;
+		private long rows;
+
+		public DividendWriter(SnapshotWriter writer, BlockingQueue<List<Dividend>> queue) {
+			this.writer = writer;
+			this.queue = queue;
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				List<Dividend> list;
+				try {
+					list = queue.take();
+				} catch (InterruptedException e) {
+					return;
+				}
+
+				if (list == END_OF_DIVIDENDS) {
+					return;
+				}
+
+				if (failure != null) {
+					continue;
+				}
+				try {
+					writer.writeDividends(list);
+					rows += list.size();
+				} catch (Exception e) {
+					failed("Could not write to the snapshot, abandoning it", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		new WriteSnapshot();
+	}
+}
@@ -0,0 +1,288 @@
+package com.datastax.refdata.csv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Minimal csv reader for the fixed layouts of the daily_prices and dividends files. Rows are split into field
+ * offsets inside a reusable byte buffer and numbers and dates are parsed straight from the bytes, so no String or
+ * String[] is created per row. Quoted fields are not supported, the vendor files do not use them.
+ * 
+ * Instances are not thread-safe, use one reader per file.
+ */
+public class ByteCsvReader implements Closeable {
+
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+	private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+	private static final int MAX_COLUMNS = 16;
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	private final InputStream in;
+	private byte[] buffer;
+	private int position;
+	private int limit;
+	private boolean eof;
+
+	private final int[] fieldStart = new int[MAX_COLUMNS];
+	private final int[] fieldEnd = new int[MAX_COLUMNS];
+	private int columns;
+
+	private final DateDecoder dateDecoder;
+
+	public ByteCsvReader(InputStream in, int skipLines) throws IOException {
+		this(in, skipLines, new DateDecoder());
+	}
+
+	public ByteCsvReader(InputStream in, int skipLines, DateDecoder dateDecoder) throws IOException {
+		this.in = in;
+		this.dateDecoder = dateDecoder;
+		this.buffer = new byte[DEFAULT_BUFFER_SIZE];
+
+		for (int i = 0; i < skipLines && nextRow(); i++)
+			;
+	}
+
+	/**
+	 * Advances to the next non empty row.
+	 * 
+	 * @return false when the end of the stream has been reached.
+	 */
+	public boolean nextRow() throws IOException {
+		while (true) {
+			int lineEnd = findLineEnd();
+			if (lineEnd < 0) {
+				return false;
+			}
+			int start = position;
+			int end = lineEnd;
+			position = lineEnd + 1;
+
+			if (end > start && buffer[end - 1] == '\r') {
+				end--;
+			}
+			if (end == start) {
+				continue;
+			}
+			split(start, end);
+			return true;
+		}
+	}
+
+	public int getColumnCount() {
+		return columns;
+	}
+
+	public String getString(int column) {
+		checkColumn(column);
+		int start = trimStart(column);
+		int end = trimEnd(column, start);
+		return new String(buffer, start, end - start, ASCII);
+	}
+
+	/**
+	 * Compares a field against a String without creating a new String for the field.
+	 */
+	public boolean fieldEquals(int column, String value) {
+		if (value == null) {
+			return false;
+		}
+		checkColumn(column);
+		int start = trimStart(column);
+		int end = trimEnd(column, start);
+
+		if (end - start != value.length()) {
+			return false;
+		}
+		for (int i = start; i < end; i++) {
+			char c = value.charAt(i - start);
+			byte b = buffer[i];
+			if (c != b && Character.toUpperCase(c) != Character.toUpperCase((char) b)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public int getInt(int column) {
+		checkColumn(column);
+		int i = trimStart(column);
+		int end = trimEnd(column, i);
+
+		boolean negative = false;
+		if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+			negative = buffer[i] == '-';
+			i++;
+		}
+		if (i == end) {
+			throw numberFormatException(column);
+		}
+		long value = 0;
+		for (; i < end; i++) {
+			int digit = buffer[i] - '0';
+			if (digit < 0 || digit > 9) {
+				throw numberFormatException(column);
+			}
+			value = value * 10 + digit;
+			if (value > (long) Integer.MAX_VALUE + 1) {
+				throw numberFormatException(column);
+			}
+		}
+		value = negative ? -value : value;
+		if (value > Integer.MAX_VALUE) {
+			throw numberFormatException(column);
+		}
+		return (int) value;
+	}
+
+	public double getDouble(int column) {
+		checkColumn(column);
+		int start = trimStart(column);
+		int end = trimEnd(column, start);
+		int i = start;
+
+		boolean negative = false;
+		if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+			negative = buffer[i] == '-';
+			i++;
+		}
+
+		long mantissa = 0;
+		int digits = 0;
+		int scale = 0;
+		boolean seenDigit = false;
+		boolean seenPoint = false;
+
+		for (; i < end; i++) {
+			byte b = buffer[i];
+			if (b >= '0' && b <= '9') {
+				seenDigit = true;
+				if (mantissa != 0 || b != '0') {
+					digits++;
+				}
+				mantissa = mantissa * 10 + (b - '0');
+				if (seenPoint) {
+					scale++;
+				}
+			} else if (b == '.' && !seenPoint) {
+				seenPoint = true;
+			} else {
+				break;
+			}
+		}
+
+		// Exponents, long mantissas and anything else unusual take the slow but exact path.
+		if (i != end || !seenDigit || digits > 15 || scale >= POWERS_OF_TEN.length) {
+			return Double.parseDouble(new String(buffer, start, end - start, ASCII));
+		}
+
+		// Both operands are exact doubles so a single division is correctly rounded.
+		double value = scale == 0 ? mantissa : mantissa / POWERS_OF_TEN[scale];
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parses a yyyy-MM-dd field to epoch millis at midnight, see {@link DateDecoder}.
+	 */
+	public long getDateMillis(int column) {
+		checkColumn(column);
+		int start = trimStart(column);
+		int end = trimEnd(column, start);
+		return dateDecoder.parseMillis(buffer, start, end - start);
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	private void split(int start, int end) {
+		columns = 0;
+		fieldStart[0] = start;
+		for (int i = start; i < end; i++) {
+			if (buffer[i] == ',') {
+				if (columns + 1 == MAX_COLUMNS) {
+					break;
+				}
+				fieldEnd[columns++] = i;
+				fieldStart[columns] = i + 1;
+			}
+		}
+		fieldEnd[columns++] = end;
+	}
+
+	private int findLineEnd() throws IOException {
+		int scan = position;
+		while (true) {
+			for (; scan < limit; scan++) {
+				if (buffer[scan] == '\n') {
+					return scan;
+				}
+			}
+			if (eof) {
+				if (position < limit) {
+					// Last line without a trailing new line, terminate it in the buffer.
+					ensureSpace();
+					buffer[limit] = '\n';
+					return limit++;
+				}
+				return -1;
+			}
+			int scanned = scan - position;
+			fill();
+			scan = position + scanned;
+		}
+	}
+
+	private void fill() throws IOException {
+		ensureSpace();
+		int read = in.read(buffer, limit, buffer.length - limit);
+		if (read < 0) {
+			eof = true;
+		} else {
+			limit += read;
+		}
+	}
+
+	private void ensureSpace() {
+		if (position > 0) {
+			System.arraycopy(buffer, position, buffer, 0, limit - position);
+			limit -= position;
+			position = 0;
+		}
+		if (limit == buffer.length) {
+			byte[] grown = new byte[buffer.length * 2];
+			System.arraycopy(buffer, 0, grown, 0, limit);
+			buffer = grown;
+		}
+	}
+
+	private int trimStart(int column) {
+		int start = fieldStart[column];
+		int end = fieldEnd[column];
+		while (start < end && buffer[start] <= ' ') {
+			start++;
+		}
+		return start;
+	}
+
+	private int trimEnd(int column, int start) {
+		int end = fieldEnd[column];
+		while (end > start && buffer[end - 1] <= ' ') {
+			end--;
+		}
+		return end;
+	}
+
+	private void checkColumn(int column) {
+		if (column >= columns) {
+			throw new ArrayIndexOutOfBoundsException("Row has " + columns + " columns, requested " + column);
+		}
+	}
+
+	private NumberFormatException numberFormatException(int column) {
+		return new NumberFormatException("For input string: \"" + getString(column) + "\"");
+	}
+}
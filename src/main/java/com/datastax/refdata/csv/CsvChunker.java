@@ -0,0 +1,187 @@
+package com.datastax.refdata.csv;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits a csv file sorted by exchange and symbol into chunks of roughly the requested size that never split a
+ * symbol, so each chunk can be parsed on its own thread and still flush whole symbols. Chunks are memory mapped when
+ * they are parsed, the file itself is never read onto the heap.
+ */
+public class CsvChunker {
+
+	private static final int SCAN_BUFFER_SIZE = 8 * 1024;
+
+	private CsvChunker() {
+	}
+
+	public static List<Chunk> split(File file, long targetChunkSize, int skipLines) throws IOException {
+		return split(file, 0, Long.MAX_VALUE, targetChunkSize, skipLines);
+	}
+
+	/**
+	 * Splits only the bytes from start to end, which must both be line starts, or end may be past the end of the
+	 * file. The lines to skip are counted from start.
+	 */
+	public static List<Chunk> split(File file, long start, long end, long targetChunkSize, int skipLines)
+			throws IOException {
+		List<Chunk> chunks = new ArrayList<Chunk>();
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long size = Math.min(end, channel.size());
+
+			Scanner scanner = new Scanner(channel, start);
+			for (int i = 0; i < skipLines && scanner.position < size; i++) {
+				scanner.skipLine();
+			}
+
+			long chunkStart = scanner.position;
+			while (chunkStart < size) {
+				long chunkEnd = chunkStart + targetChunkSize >= size ? size : nextSymbolBoundary(channel,
+						chunkStart + targetChunkSize, size);
+				chunks.add(new Chunk(file, chunkStart, chunkEnd - chunkStart));
+				chunkStart = chunkEnd;
+			}
+		} finally {
+			raf.close();
+		}
+		return chunks;
+	}
+
+	/**
+	 * @return the offset of the first line at or after the line following the given position whose exchange and
+	 *         symbol differ from the line before it, or size if there is none before it.
+	 */
+	private static long nextSymbolBoundary(FileChannel channel, long from, long size) throws IOException {
+		Scanner scanner = new Scanner(channel, from);
+		scanner.skipLine();
+		if (scanner.position >= size) {
+			return size;
+		}
+		byte[] key = scanner.readKey();
+		scanner.skipLine();
+
+		while (scanner.position < size) {
+			long lineStart = scanner.position;
+			if (!Arrays.equals(key, scanner.readKey())) {
+				return lineStart;
+			}
+			scanner.skipLine();
+		}
+		return size;
+	}
+
+	public static class Chunk {
+		private final File file;
+		private final long offset;
+		private final long length;
+
+		Chunk(File file, long offset, long length) {
+			this.file = file;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		public long getOffset() {
+			return offset;
+		}
+
+		public long getLength() {
+			return length;
+		}
+
+		/**
+		 * Maps the chunk read only. The mapping stays valid after the underlying channel is closed.
+		 */
+		public MappedByteBuffer map() throws IOException {
+			if (length > Integer.MAX_VALUE) {
+				throw new IOException("Chunk of " + length + " bytes in " + file.getName()
+						+ " is too large to map, a single symbol is bigger than 2GB");
+			}
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				return raf.getChannel().map(MapMode.READ_ONLY, offset, length);
+			} finally {
+				raf.close();
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "Chunk [file=" + file.getName() + ", offset=" + offset + ", length=" + length + "]";
+		}
+	}
+
+	/**
+	 * Sequential byte reader over a channel used to probe for chunk boundaries.
+	 */
+	private static class Scanner {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+		private long position;
+
+		Scanner(FileChannel channel, long position) {
+			this.channel = channel;
+			this.position = position;
+			this.buffer.limit(0);
+		}
+
+		/**
+		 * @return the next byte or -1 at the end of the file.
+		 */
+		int next() throws IOException {
+			if (!buffer.hasRemaining()) {
+				buffer.clear();
+				if (channel.read(buffer, position) <= 0) {
+					buffer.limit(0);
+					return -1;
+				}
+				buffer.flip();
+			}
+			position++;
+			return buffer.get() & 0xFF;
+		}
+
+		void skipLine() throws IOException {
+			int b;
+			while ((b = next()) != -1 && b != '\n')
+				;
+		}
+
+		/**
+		 * Reads the exchange and symbol columns of the current line, up to the second comma.
+		 */
+		byte[] readKey() throws IOException {
+			ByteBuffer key = ByteBuffer.allocate(64);
+			int commas = 0;
+			int b;
+			while ((b = next()) != -1 && b != '\n') {
+				if (b == ',' && ++commas == 2) {
+					break;
+				}
+				if (!key.hasRemaining()) {
+					ByteBuffer grown = ByteBuffer.allocate(key.capacity() * 2);
+					key.flip();
+					grown.put(key);
+					key = grown;
+				}
+				key.put((byte) b);
+			}
+			return Arrays.copyOf(key.array(), key.position());
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package com.datastax.refdata.csv;
+
+import java.nio.charset.Charset;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * Decodes yyyy-MM-dd dates to epoch millis at midnight in the decoder's time zone, the same instant
+ * SimpleDateFormat("yyyy-MM-dd") returns.
+ * 
+ * Decoded dates are kept in a small direct mapped cache. The csv files are sorted by symbol then date so the same
+ * dates come round again for every symbol and almost every lookup is a hit. Entries are immutable, so the decoder can
+ * be shared by any number of loader threads without locking.
+ */
+public class DateDecoder {
+
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+	private static final int CACHE_SIZE = 1 << 14;
+
+	private final TimeZone timeZone;
+	private final Entry[] cache = new Entry[CACHE_SIZE];
+
+	public DateDecoder() {
+		this(TimeZone.getDefault());
+	}
+
+	public DateDecoder(TimeZone timeZone) {
+		this.timeZone = (TimeZone) timeZone.clone();
+	}
+
+	public long parseMillis(CharSequence text) {
+		if (text.length() != 10 || text.charAt(4) != '-' || text.charAt(7) != '-') {
+			throw invalid(text);
+		}
+		int year = digits(text, 0, 4);
+		int month = digits(text, 5, 2);
+		int day = digits(text, 8, 2);
+		if (year < 0 || month < 0 || day < 0) {
+			throw invalid(text);
+		}
+		return toMillis(year, month, day);
+	}
+
+	public long parseMillis(byte[] bytes, int offset, int length) {
+		if (length != 10 || bytes[offset + 4] != '-' || bytes[offset + 7] != '-') {
+			throw invalid(bytes, offset, length);
+		}
+		int year = digits(bytes, offset, 4);
+		int month = digits(bytes, offset + 5, 2);
+		int day = digits(bytes, offset + 8, 2);
+		if (year < 0 || month < 0 || day < 0) {
+			throw invalid(bytes, offset, length);
+		}
+		return toMillis(year, month, day);
+	}
+
+	/**
+	 * @return epoch millis at midnight of the given day in this decoder's time zone.
+	 */
+	public long toMillis(int year, int month, int day) {
+		if (month < 1 || month > 12 || day < 1 || day > 31) {
+			throw new IllegalArgumentException("Could not parse date " + year + "-" + month + "-" + day);
+		}
+		int key = year * 10000 + month * 100 + day;
+		int slot = (key ^ (key >>> 14)) & (CACHE_SIZE - 1);
+
+		Entry entry = cache[slot];
+		if (entry != null && entry.key == key) {
+			return entry.millis;
+		}
+
+		Calendar calendar = new GregorianCalendar(timeZone);
+		calendar.clear();
+		calendar.set(year, month - 1, day);
+		long millis = calendar.getTimeInMillis();
+
+		cache[slot] = new Entry(key, millis);
+		return millis;
+	}
+
+	private static int digits(CharSequence text, int offset, int length) {
+		int value = 0;
+		for (int i = offset; i < offset + length; i++) {
+			int digit = text.charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	private static int digits(byte[] bytes, int offset, int length) {
+		int value = 0;
+		for (int i = offset; i < offset + length; i++) {
+			int digit = bytes[i] - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	private static IllegalArgumentException invalid(CharSequence text) {
+		return new IllegalArgumentException("Could not parse date " + text);
+	}
+
+	private static IllegalArgumentException invalid(byte[] bytes, int offset, int length) {
+		return new IllegalArgumentException("Could not parse date " + new String(bytes, offset, length, ASCII));
+	}
+
+	private static final class Entry {
+		final int key;
+		final long millis;
+
+		Entry(int key, long millis) {
+			this.key = key;
+			this.millis = millis;
+		}
+	}
+}
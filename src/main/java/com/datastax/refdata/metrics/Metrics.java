@@ -0,0 +1,156 @@
+package com.datastax.refdata.metrics;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of {@link OperationMetrics} with periodic reporting to the log and a csv export of the run's totals.
+ */
+public class Metrics {
+
+	private static Logger logger = LoggerFactory.getLogger(Metrics.class);
+
+	public static final String INSERT = "insert";
+	public static final String INSERT_METADATA = "insert_metadata";
+	public static final String READ = "read";
+	public static final String RANGE_READ = "range_read";
+	public static final String SCAN = "scan";
+
+	private final ConcurrentMap<String, OperationMetrics> operations = new ConcurrentHashMap<String, OperationMetrics>();
+	private ScheduledExecutorService reporter;
+	private long startNanos = System.nanoTime();
+
+	public OperationMetrics get(String name) {
+		OperationMetrics metrics = operations.get(name);
+		if (metrics == null) {
+			OperationMetrics created = new OperationMetrics(name);
+			metrics = operations.putIfAbsent(name, created);
+			if (metrics == null) {
+				metrics = created;
+			}
+		}
+		return metrics;
+	}
+
+	public Collection<OperationMetrics> getOperations() {
+		return operations.values();
+	}
+
+	/**
+	 * Logs the latency percentiles, throughput and in flight counts of every operation every periodSeconds. A period
+	 * of 0 or less turns the periodic logging off, the totals are still summarised at the end.
+	 */
+	public synchronized void startReporting(final long periodSeconds) {
+		if (reporter != null) {
+			return;
+		}
+		startNanos = System.nanoTime();
+		if (periodSeconds <= 0) {
+			return;
+		}
+		reporter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "metrics-reporter");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		reporter.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				report(periodSeconds);
+			}
+		}, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+	}
+
+	public synchronized void stopReporting() {
+		if (reporter != null) {
+			reporter.shutdownNow();
+			reporter = null;
+		}
+	}
+
+	/**
+	 * Stops the periodic reporting, logs the totals and writes them to csvFile unless it is null.
+	 */
+	public void finishReporting(String csvFile) {
+		stopReporting();
+		logSummary();
+		if (csvFile != null) {
+			try {
+				exportCsv(new File(csvFile));
+			} catch (IOException e) {
+				logger.warn("Could not write metrics to " + csvFile, e);
+			}
+		}
+	}
+
+	/**
+	 * Only scheduled by {@link #startReporting(long)} with a period above 0.
+	 */
+	private void report(long periodSeconds) {
+		for (OperationMetrics metrics : operations.values()) {
+			Histogram interval = metrics.sampleInterval();
+			if (interval.getTotalCount() == 0 && metrics.getInFlight() == 0) {
+				continue;
+			}
+			logger.info(metrics.getName() + " : " + (interval.getTotalCount() / periodSeconds) + " requests/sec, "
+					+ OperationMetrics.describe(interval) + ", in flight " + metrics.getInFlight());
+		}
+	}
+
+	/**
+	 * Logs the totals of the run for every operation.
+	 */
+	public void logSummary() {
+		double seconds = Math.max(1, System.nanoTime() - startNanos) / 1e9;
+		for (OperationMetrics metrics : operations.values()) {
+			Histogram total = metrics.sampleTotal();
+			if (metrics.getRequests() == 0) {
+				continue;
+			}
+			logger.info(metrics.getName() + " total : " + metrics.getRequests() + " requests, " + metrics.getRows()
+					+ " rows (" + (long) (metrics.getRows() / seconds) + " rows/sec), " + metrics.getErrors()
+					+ " errors, " + OperationMetrics.describe(total));
+		}
+	}
+
+	/**
+	 * Writes the totals of the run for every operation as csv, latencies in milliseconds.
+	 */
+	public void exportCsv(File file) throws IOException {
+		double seconds = Math.max(1, System.nanoTime() - startNanos) / 1e9;
+		PrintWriter writer = new PrintWriter(new FileWriter(file));
+		try {
+			writer.println("operation,requests,rows,errors,rows_per_sec,mean_ms,p50_ms,p90_ms,p99_ms,p999_ms,max_ms");
+			for (OperationMetrics metrics : operations.values()) {
+				Histogram total = metrics.sampleTotal();
+				writer.println(metrics.getName() + "," + metrics.getRequests() + "," + metrics.getRows() + ","
+						+ metrics.getErrors() + "," + (long) (metrics.getRows() / seconds) + ","
+						+ OperationMetrics.millis((long) total.getMean()) + ","
+						+ OperationMetrics.millis(total.getValueAtPercentile(50)) + ","
+						+ OperationMetrics.millis(total.getValueAtPercentile(90)) + ","
+						+ OperationMetrics.millis(total.getValueAtPercentile(99)) + ","
+						+ OperationMetrics.millis(total.getValueAtPercentile(99.9)) + ","
+						+ OperationMetrics.millis(total.getMaxValue()));
+			}
+		} finally {
+			writer.close();
+		}
+		logger.info("Metrics written to " + file.getAbsolutePath());
+	}
+}
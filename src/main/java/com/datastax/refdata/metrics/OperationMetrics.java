@@ -0,0 +1,99 @@
+package com.datastax.refdata.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Latency histogram, request, row, error and in flight counts for one kind of operation. Recording is lock-free and
+ * safe from any thread, including the driver's I/O threads.
+ */
+public class OperationMetrics {
+
+	private static final int SIGNIFICANT_DIGITS = 3;
+
+	private final String name;
+	private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+	private final AtomicLong requests = new AtomicLong(0);
+	private final AtomicLong rows = new AtomicLong(0);
+	private final AtomicLong errors = new AtomicLong(0);
+	private final AtomicInteger inFlight = new AtomicInteger(0);
+
+	// Guarded by this, only touched when sampling
+	private final Histogram total = new Histogram(SIGNIFICANT_DIGITS);
+	private Histogram interval;
+
+	OperationMetrics(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Marks the start of an operation.
+	 * 
+	 * @return the start time to pass to {@link #end(long, int, boolean)}.
+	 */
+	public long start() {
+		inFlight.incrementAndGet();
+		return System.nanoTime();
+	}
+
+	public void end(long startNanos, int rows, boolean success) {
+		recorder.recordValue(Math.max(0, System.nanoTime() - startNanos));
+		inFlight.decrementAndGet();
+		requests.incrementAndGet();
+		this.rows.addAndGet(rows);
+		if (!success) {
+			errors.incrementAndGet();
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getRequests() {
+		return requests.get();
+	}
+
+	public long getRows() {
+		return rows.get();
+	}
+
+	public long getErrors() {
+		return errors.get();
+	}
+
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	/**
+	 * @return the latencies recorded since the previous call, which are also added to the run's total.
+	 */
+	synchronized Histogram sampleInterval() {
+		interval = recorder.getIntervalHistogram(interval);
+		total.add(interval);
+		return interval.copy();
+	}
+
+	/**
+	 * @return all latencies recorded so far.
+	 */
+	synchronized Histogram sampleTotal() {
+		sampleInterval();
+		return total.copy();
+	}
+
+	static String describe(Histogram histogram) {
+		return String.format("p50 %.3fms, p99 %.3fms, p99.9 %.3fms, max %.3fms", millis(histogram
+				.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(99)), millis(histogram
+				.getValueAtPercentile(99.9)), millis(histogram.getMaxValue()));
+	}
+
+	static double millis(long nanos) {
+		return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+}
@@ -16,6 +16,21 @@ public class ExchangeSymbol {
 	public String getSymbol() {
 		return symbol;
 	}
-	
-
+	@Override
+	public int hashCode() {
+		return 31 * exchange.hashCode() + symbol.hashCode();
+	}
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof ExchangeSymbol))
+			return false;
+		ExchangeSymbol other = (ExchangeSymbol) obj;
+		return exchange.equals(other.exchange) && symbol.equals(other.symbol);
+	}
+	@Override
+	public String toString() {
+		return "ExchangeSymbol [exchange=" + exchange + ", symbol=" + symbol + "]";
+	}
 }
@@ -0,0 +1,19 @@
+package com.datastax.refdata.model;
+
+/**
+ * Value columns of the historic_data table that a query can project. The key columns and the date are always read.
+ */
+public enum HistoricDataColumn {
+
+	OPEN("open"), HIGH("high"), LOW("low"), CLOSE("close"), VOLUME("volume"), ADJ_CLOSE("adj_close");
+
+	private final String columnName;
+
+	private HistoricDataColumn(String columnName) {
+		this.columnName = columnName;
+	}
+
+	public String getColumnName() {
+		return columnName;
+	}
+}
@@ -0,0 +1,95 @@
+package com.datastax.refdata.model;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Read of one exchange symbol's historic data: an optional date range (from inclusive, to exclusive), an optional
+ * row limit and the value columns to fetch. Rows come back most recent first. Columns that are not fetched are NaN,
+ * or 0 for the volume, in the returned HistoricData.
+ */
+public class HistoricDataQuery {
+
+	private final ExchangeSymbol exchangeSymbol;
+	private Date from;
+	private Date to;
+	private int limit;
+	private int fetchSize = 5000;
+	private EnumSet<HistoricDataColumn> columns = EnumSet.allOf(HistoricDataColumn.class);
+
+	public HistoricDataQuery(ExchangeSymbol exchangeSymbol) {
+		this.exchangeSymbol = exchangeSymbol;
+	}
+
+	public HistoricDataQuery withRange(Date from, Date to) {
+		this.from = from;
+		this.to = to;
+		return this;
+	}
+
+	/**
+	 * @param limit the maximum number of rows to return, 0 for no limit.
+	 */
+	public HistoricDataQuery withLimit(int limit) {
+		this.limit = limit;
+		return this;
+	}
+
+	public HistoricDataQuery withColumns(HistoricDataColumn first, HistoricDataColumn... rest) {
+		this.columns = EnumSet.of(first, rest);
+		return this;
+	}
+
+	/**
+	 * @param fetchSize the number of rows fetched per page.
+	 */
+	public HistoricDataQuery withFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+		return this;
+	}
+
+	public ExchangeSymbol getExchangeSymbol() {
+		return exchangeSymbol;
+	}
+
+	public Date getFrom() {
+		return from;
+	}
+
+	public Date getTo() {
+		return to;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	public Set<HistoricDataColumn> getColumns() {
+		return Collections.unmodifiableSet(columns);
+	}
+
+	/**
+	 * @return the row at the index of the series holding only the projected columns, the other columns are not read.
+	 */
+	public HistoricData project(HistoricSeries series, int index) {
+		return new HistoricData(series.getExchange(), series.getSymbol(), new Date(series.getDate(index)),
+				columns.contains(HistoricDataColumn.OPEN) ? series.getOpen(index) : Double.NaN,
+				columns.contains(HistoricDataColumn.HIGH) ? series.getHigh(index) : Double.NaN,
+				columns.contains(HistoricDataColumn.LOW) ? series.getLow(index) : Double.NaN,
+				columns.contains(HistoricDataColumn.CLOSE) ? series.getClose(index) : Double.NaN,
+				columns.contains(HistoricDataColumn.VOLUME) ? series.getVolume(index) : 0,
+				columns.contains(HistoricDataColumn.ADJ_CLOSE) ? series.getAdjClose(index) : Double.NaN);
+	}
+
+	@Override
+	public String toString() {
+		return "HistoricDataQuery [exchangeSymbol=" + exchangeSymbol + ", from=" + from + ", to=" + to + ", limit="
+				+ limit + ", columns=" + columns + "]";
+	}
+}
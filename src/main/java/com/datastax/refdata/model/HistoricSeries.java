@@ -0,0 +1,363 @@
+package com.datastax.refdata.model;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The historic data of one exchange symbol held column by column, sorted by date descending like the rows of a
+ * historic_data partition. Dates are epoch millis. Immutable, rows are only turned into {@link HistoricData} objects
+ * when they are read through {@link #get(int)} or {@link #asList()}.
+ */
+public class HistoricSeries {
+
+	private final String exchange;
+	private final String symbol;
+	private final int size;
+	private final long[] dates;
+	private final double[] open;
+	private final double[] high;
+	private final double[] low;
+	private final double[] close;
+	private final int[] volume;
+	private final double[] adjClose;
+
+	private HistoricSeries(String exchange, String symbol, int size, long[] dates, double[] open, double[] high,
+			double[] low, double[] close, int[] volume, double[] adjClose) {
+		this.exchange = exchange;
+		this.symbol = symbol;
+		this.size = size;
+		this.dates = dates;
+		this.open = open;
+		this.high = high;
+		this.low = low;
+		this.close = close;
+		this.volume = volume;
+		this.adjClose = adjClose;
+	}
+
+	/**
+	 * @return the series backing the list if it is a view from {@link #asList()}, otherwise a series built from the
+	 *         rows, which must all belong to one exchange symbol.
+	 */
+	public static HistoricSeries of(List<HistoricData> list) {
+		if (list instanceof Rows) {
+			return ((Rows) list).series();
+		}
+		if (list.isEmpty()) {
+			throw new IllegalArgumentException("Cannot build a series from an empty list");
+		}
+		Builder builder = new Builder(list.get(0).getExchange(), list.get(0).getSymbol(), list.size());
+		for (HistoricData row : list) {
+			builder.add(row);
+		}
+		return builder.build();
+	}
+
+	public String getExchange() {
+		return exchange;
+	}
+
+	public String getSymbol() {
+		return symbol;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public long getDate(int index) {
+		return dates[index];
+	}
+
+	public double getOpen(int index) {
+		return open[index];
+	}
+
+	public double getHigh(int index) {
+		return high[index];
+	}
+
+	public double getLow(int index) {
+		return low[index];
+	}
+
+	public double getClose(int index) {
+		return close[index];
+	}
+
+	public int getVolume(int index) {
+		return volume[index];
+	}
+
+	public double getAdjClose(int index) {
+		return adjClose[index];
+	}
+
+	public HistoricData get(int index) {
+		if (index >= size) {
+			throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+		}
+		return new HistoricData(exchange, symbol, new Date(dates[index]), open[index], high[index], low[index],
+				close[index], volume[index], adjClose[index]);
+	}
+
+	/**
+	 * @return the number of leading rows dated after the date, or on it as well when inclusive. As rows are sorted
+	 *         by date descending, this is also the index of the first row dated before it.
+	 */
+	public int countFrom(long date, boolean inclusive) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (dates[mid] > date || (inclusive && dates[mid] == date)) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return a series holding only the first rows, the most recent ones.
+	 */
+	public HistoricSeries head(int rows) {
+		if (rows >= size) {
+			return this;
+		}
+		return new HistoricSeries(exchange, symbol, rows, Arrays.copyOf(dates, rows), Arrays.copyOf(open, rows),
+				Arrays.copyOf(high, rows), Arrays.copyOf(low, rows), Arrays.copyOf(close, rows), Arrays.copyOf(
+						volume, rows), Arrays.copyOf(adjClose, rows));
+	}
+
+	/**
+	 * @return a read only view of the rows, materialized as they are read.
+	 */
+	public List<HistoricData> asList() {
+		return new Rows();
+	}
+
+	/**
+	 * Upserts the rows of the other series into this one, the other series wins where both hold the same date.
+	 *
+	 * @return a new series holding the rows of both.
+	 */
+	public HistoricSeries merge(HistoricSeries other) {
+		if (other.isEmpty()) {
+			return this;
+		}
+		if (isEmpty()) {
+			return other;
+		}
+
+		Builder builder = new Builder(exchange, symbol, size + other.size);
+		int i = 0;
+		int j = 0;
+		while (i < size || j < other.size) {
+			if (j == other.size || (i < size && dates[i] > other.dates[j])) {
+				builder.add(this, i++);
+			} else {
+				if (i < size && dates[i] == other.dates[j]) {
+					i++;
+				}
+				builder.add(other, j++);
+			}
+		}
+		return builder.build();
+	}
+
+	@Override
+	public String toString() {
+		return "HistoricSeries [exchange=" + exchange + ", symbol=" + symbol + ", size=" + size + "]";
+	}
+
+	private class Rows extends AbstractList<HistoricData> implements RandomAccess {
+
+		@Override
+		public HistoricData get(int index) {
+			return HistoricSeries.this.get(index);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		HistoricSeries series() {
+			return HistoricSeries.this;
+		}
+	}
+
+	/**
+	 * Collects the rows of one exchange symbol, in any order. Where the same date is added twice the last row wins.
+	 * Not thread-safe.
+	 */
+	public static class Builder {
+
+		private final String exchange;
+		private final String symbol;
+		private int size;
+		private boolean descending = true;
+		private long[] dates;
+		private double[] open;
+		private double[] high;
+		private double[] low;
+		private double[] close;
+		private int[] volume;
+		private double[] adjClose;
+
+		public Builder(String exchange, String symbol) {
+			this(exchange, symbol, 256);
+		}
+
+		public Builder(String exchange, String symbol, int capacity) {
+			// Every series and row of a symbol shares one copy of the strings
+			this.exchange = exchange.intern();
+			this.symbol = symbol.intern();
+			capacity = Math.max(capacity, 1);
+			this.dates = new long[capacity];
+			this.open = new double[capacity];
+			this.high = new double[capacity];
+			this.low = new double[capacity];
+			this.close = new double[capacity];
+			this.volume = new int[capacity];
+			this.adjClose = new double[capacity];
+		}
+
+		public String getExchange() {
+			return exchange;
+		}
+
+		public String getSymbol() {
+			return symbol;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public Builder add(long date, double open, double high, double low, double close, int volume,
+				double adjClose) {
+			if (size == dates.length) {
+				grow();
+			}
+			if (size > 0 && date >= dates[size - 1]) {
+				descending = false;
+			}
+			this.dates[size] = date;
+			this.open[size] = open;
+			this.high[size] = high;
+			this.low[size] = low;
+			this.close[size] = close;
+			this.volume[size] = volume;
+			this.adjClose[size] = adjClose;
+			size++;
+			return this;
+		}
+
+		public Builder add(HistoricData row) {
+			if (!exchange.equals(row.getExchange()) || !symbol.equals(row.getSymbol())) {
+				throw new IllegalArgumentException("Row of " + row.getExchange() + "-" + row.getSymbol()
+						+ " added to the series of " + exchange + "-" + symbol);
+			}
+			return add(row.getDate().getTime(), row.getOpen(), row.getHigh(), row.getLow(), row.getClose(),
+					row.getVolume(), row.getAdjClose());
+		}
+
+		private Builder add(HistoricSeries series, int index) {
+			return add(series.dates[index], series.open[index], series.high[index], series.low[index],
+					series.close[index], series.volume[index], series.adjClose[index]);
+		}
+
+		/**
+		 * @return the rows added so far, the builder must not be used afterwards.
+		 */
+		public HistoricSeries build() {
+			if (!descending) {
+				sort();
+			}
+			if (size < dates.length) {
+				trim(size);
+			}
+			return new HistoricSeries(exchange, symbol, size, dates, open, high, low, close, volume, adjClose);
+		}
+
+		private void grow() {
+			int capacity = dates.length + (dates.length >> 1) + 1;
+			dates = Arrays.copyOf(dates, capacity);
+			open = Arrays.copyOf(open, capacity);
+			high = Arrays.copyOf(high, capacity);
+			low = Arrays.copyOf(low, capacity);
+			close = Arrays.copyOf(close, capacity);
+			volume = Arrays.copyOf(volume, capacity);
+			adjClose = Arrays.copyOf(adjClose, capacity);
+		}
+
+		private void trim(int capacity) {
+			dates = Arrays.copyOf(dates, capacity);
+			open = Arrays.copyOf(open, capacity);
+			high = Arrays.copyOf(high, capacity);
+			low = Arrays.copyOf(low, capacity);
+			close = Arrays.copyOf(close, capacity);
+			volume = Arrays.copyOf(volume, capacity);
+			adjClose = Arrays.copyOf(adjClose, capacity);
+		}
+
+		private void sort() {
+			Integer[] order = new Integer[size];
+			for (int i = 0; i < size; i++) {
+				order[i] = i;
+			}
+			// Newest first, and the last added first among rows of the same date so it wins below
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					int byDate = Long.compare(dates[b], dates[a]);
+					return byDate != 0 ? byDate : Integer.compare(b, a);
+				}
+			});
+
+			long[] sortedDates = new long[size];
+			double[] sortedOpen = new double[size];
+			double[] sortedHigh = new double[size];
+			double[] sortedLow = new double[size];
+			double[] sortedClose = new double[size];
+			int[] sortedVolume = new int[size];
+			double[] sortedAdjClose = new double[size];
+
+			int count = 0;
+			for (int i : order) {
+				if (count > 0 && sortedDates[count - 1] == dates[i]) {
+					continue;
+				}
+				sortedDates[count] = dates[i];
+				sortedOpen[count] = open[i];
+				sortedHigh[count] = high[i];
+				sortedLow[count] = low[i];
+				sortedClose[count] = close[i];
+				sortedVolume[count] = volume[i];
+				sortedAdjClose[count] = adjClose[i];
+				count++;
+			}
+
+			dates = sortedDates;
+			open = sortedOpen;
+			high = sortedHigh;
+			low = sortedLow;
+			close = sortedClose;
+			volume = sortedVolume;
+			adjClose = sortedAdjClose;
+			size = count;
+			descending = true;
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package com.datastax.refdata.snapshot;
+
+import java.io.IOException;
+
+import net.jpountz.lz4.LZ4Factory;
+
+import org.xerial.snappy.Snappy;
+
+/**
+ * How the blocks of a snapshot are compressed. The choice is recorded in the snapshot's header.
+ */
+public enum SnapshotCompression {
+
+	NONE {
+		@Override
+		byte[] compress(byte[] bytes) {
+			return bytes;
+		}
+
+		@Override
+		byte[] decompress(byte[] bytes, int rawLength) {
+			return bytes;
+		}
+	},
+
+	LZ4 {
+		@Override
+		byte[] compress(byte[] bytes) {
+			return LZ4Factory.fastestInstance().fastCompressor().compress(bytes);
+		}
+
+		@Override
+		byte[] decompress(byte[] bytes, int rawLength) {
+			return LZ4Factory.fastestInstance().fastDecompressor().decompress(bytes, rawLength);
+		}
+	},
+
+	SNAPPY {
+		@Override
+		byte[] compress(byte[] bytes) throws IOException {
+			return Snappy.compress(bytes);
+		}
+
+		@Override
+		byte[] decompress(byte[] bytes, int rawLength) throws IOException {
+			return Snappy.uncompress(bytes);
+		}
+	};
+
+	abstract byte[] compress(byte[] bytes) throws IOException;
+
+	abstract byte[] decompress(byte[] bytes, int rawLength) throws IOException;
+
+	public static SnapshotCompression fromName(String name) {
+		return valueOf(name.toUpperCase());
+	}
+}
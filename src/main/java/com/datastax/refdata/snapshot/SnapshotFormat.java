@@ -0,0 +1,73 @@
+package com.datastax.refdata.snapshot;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Layout of a snapshot file, all numbers big endian:
+ * 
+ * <pre>
+ * header : int magic, int version, byte compression ordinal
+ * block  : byte kind, int raw length, int stored length, stored length bytes of (compressed) payload
+ * end    : byte 0
+ * </pre>
+ * 
+ * A daily prices payload holds one exchange symbol, rows sorted by date descending:
+ * 
+ * <pre>
+ * string exchange, string symbol, int rows, varlong first date, varlong[rows - 1] date deltas,
+ * double[rows] open, high, low, close, adjClose, varlong[rows] volume
+ * </pre>
+ * 
+ * A dividends payload is the same without the prices: exchange, symbol, rows, dates, double[rows] dividend. Strings
+ * are a short length followed by UTF-8 bytes, varlongs are zigzag encoded 7 bits per byte.
+ */
+final class SnapshotFormat {
+
+	static final int MAGIC = 0x52445331;
+	static final int VERSION = 1;
+
+	static final byte END = 0;
+	static final byte HISTORIC_DATA = 1;
+	static final byte DIVIDENDS = 2;
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private SnapshotFormat() {
+	}
+
+	static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(UTF8);
+		out.writeShort(bytes.length);
+		out.write(bytes);
+	}
+
+	static String readString(ByteBuffer in) {
+		byte[] bytes = new byte[in.getShort() & 0xFFFF];
+		in.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	static void writeVarLong(DataOutputStream out, long value) throws IOException {
+		long zigzag = (value << 1) ^ (value >> 63);
+		while ((zigzag & ~0x7FL) != 0) {
+			out.writeByte((int) ((zigzag & 0x7F) | 0x80));
+			zigzag >>>= 7;
+		}
+		out.writeByte((int) zigzag);
+	}
+
+	static long readVarLong(ByteBuffer in) {
+		long zigzag = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = in.get();
+			zigzag |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		return (zigzag >>> 1) ^ -(zigzag & 1);
+	}
+}
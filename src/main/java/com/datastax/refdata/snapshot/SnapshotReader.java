@@ -0,0 +1,233 @@
+package com.datastax.refdata.snapshot;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.datastax.refdata.model.Dividend;
+import com.datastax.refdata.model.HistoricSeries;
+
+/**
+ * Reads a snapshot block by block, either through a buffered stream or memory mapped. A mapped snapshot is mapped a
+ * window of about windowSize bytes at a time, moved on as the blocks are read, so it may be of any size. Blocks that
+ * are not read after {@link #next()} are skipped without being decompressed. Not thread-safe.
+ */
+public class SnapshotReader implements Closeable {
+
+	private static final long DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+	private final File file;
+	private final DataInputStream in;
+	private final RandomAccessFile raf;
+	private final long size;
+	private final long windowSize;
+	private final SnapshotCompression compression;
+	private MappedByteBuffer window;
+	private long windowStart;
+	private long position;
+	private byte kind;
+	private int rawLength;
+	private int storedLength;
+	private boolean read;
+
+	/**
+	 * @param mapped whether to memory map the file instead of streaming it.
+	 */
+	public SnapshotReader(File file, boolean mapped) throws IOException {
+		this(file, mapped, DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * @param windowSize the bytes mapped at a time when mapped, grown to hold any block that is larger.
+	 */
+	public SnapshotReader(File file, boolean mapped, long windowSize) throws IOException {
+		this.file = file;
+		this.windowSize = Math.max(1, Math.min(windowSize, Integer.MAX_VALUE));
+		if (mapped) {
+			this.raf = new RandomAccessFile(file, "r");
+			this.size = raf.length();
+			this.in = null;
+		} else {
+			this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1024 * 1024));
+			this.raf = null;
+			this.size = file.length();
+		}
+
+		try {
+			ByteBuffer header = ByteBuffer.wrap(readFully(9));
+			if (header.getInt() != SnapshotFormat.MAGIC) {
+				throw new IOException(file + " is not a snapshot");
+			}
+			int version = header.getInt();
+			if (version != SnapshotFormat.VERSION) {
+				throw new IOException(file + " is a version " + version + " snapshot, expected "
+						+ SnapshotFormat.VERSION);
+			}
+			int ordinal = header.get();
+			if (ordinal < 0 || ordinal >= SnapshotCompression.values().length) {
+				throw new IOException(file + " has an unknown compression " + ordinal);
+			}
+			this.compression = SnapshotCompression.values()[ordinal];
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+		this.read = true;
+	}
+
+	/**
+	 * Moves to the next block, skipping the current one if it was not read.
+	 * 
+	 * @return false once every block has been read.
+	 */
+	public boolean next() throws IOException {
+		if (!read) {
+			skip(storedLength);
+		}
+		kind = readFully(1)[0];
+		if (kind == SnapshotFormat.END) {
+			return false;
+		}
+		ByteBuffer lengths = ByteBuffer.wrap(readFully(8));
+		rawLength = lengths.getInt();
+		storedLength = lengths.getInt();
+		if (rawLength < 0 || storedLength < 0) {
+			throw new IOException(file + " is corrupt, it holds a block of " + storedLength + " bytes");
+		}
+		read = false;
+		return true;
+	}
+
+	public boolean isHistoricData() {
+		return kind == SnapshotFormat.HISTORIC_DATA;
+	}
+
+	public boolean isDividends() {
+		return kind == SnapshotFormat.DIVIDENDS;
+	}
+
+	public HistoricSeries readHistoricData() throws IOException {
+		ByteBuffer payload = payload(SnapshotFormat.HISTORIC_DATA);
+
+		String exchange = SnapshotFormat.readString(payload);
+		String symbol = SnapshotFormat.readString(payload);
+		int rows = payload.getInt();
+		HistoricSeries.Builder builder = new HistoricSeries.Builder(exchange, symbol, rows);
+
+		long[] dates = readDates(payload, rows);
+		double[][] prices = new double[5][rows];
+		for (double[] column : prices) {
+			for (int i = 0; i < rows; i++) {
+				column[i] = payload.getDouble();
+			}
+		}
+		for (int i = 0; i < rows; i++) {
+			builder.add(dates[i], prices[0][i], prices[1][i], prices[2][i], prices[3][i],
+					(int) SnapshotFormat.readVarLong(payload), prices[4][i]);
+		}
+		return builder.build();
+	}
+
+	public List<Dividend> readDividends() throws IOException {
+		ByteBuffer payload = payload(SnapshotFormat.DIVIDENDS);
+
+		String exchange = SnapshotFormat.readString(payload);
+		String symbol = SnapshotFormat.readString(payload);
+		int rows = payload.getInt();
+
+		long[] dates = readDates(payload, rows);
+		List<Dividend> list = new ArrayList<Dividend>(rows);
+		for (int i = 0; i < rows; i++) {
+			list.add(new Dividend(exchange, symbol, new Date(dates[i]), payload.getDouble()));
+		}
+		return list;
+	}
+
+	private static long[] readDates(ByteBuffer payload, int rows) {
+		long[] dates = new long[rows];
+		long previous = 0;
+		for (int i = 0; i < rows; i++) {
+			previous += SnapshotFormat.readVarLong(payload);
+			dates[i] = previous;
+		}
+		return dates;
+	}
+
+	private ByteBuffer payload(byte expected) throws IOException {
+		if (read || kind != expected) {
+			throw new IllegalStateException("The current block is not an unread block of kind " + expected);
+		}
+		read = true;
+
+		// Uncompressed blocks of a mapped snapshot are decoded in place
+		if (compression == SnapshotCompression.NONE && raf != null) {
+			map(storedLength);
+			ByteBuffer payload = window.slice();
+			payload.limit(storedLength);
+			position += storedLength;
+			return payload;
+		}
+		return ByteBuffer.wrap(compression.decompress(readFully(storedLength), rawLength));
+	}
+
+	private byte[] readFully(int length) throws IOException {
+		byte[] bytes = new byte[length];
+		if (raf != null) {
+			map(length);
+			window.get(bytes);
+			position += length;
+		} else {
+			try {
+				in.readFully(bytes);
+			} catch (EOFException e) {
+				throw new EOFException(file + " ends in the middle of a block");
+			}
+		}
+		return bytes;
+	}
+
+	private void skip(int length) throws IOException {
+		if (raf != null) {
+			position += length;
+		} else if (in.skipBytes(length) != length) {
+			throw new EOFException(file + " ends in the middle of a block");
+		}
+	}
+
+	/**
+	 * Positions the window at the read position with at least length bytes remaining, mapping the next window when
+	 * the current one does not hold them.
+	 */
+	private void map(int length) throws IOException {
+		if (position + length > size) {
+			throw new EOFException(file + " ends in the middle of a block");
+		}
+		if (window == null || position < windowStart || position + length > windowStart + window.capacity()) {
+			long mapLength = Math.min(size - position, Math.max(windowSize, length));
+			window = raf.getChannel().map(MapMode.READ_ONLY, position, mapLength);
+			windowStart = position;
+		}
+		window.position((int) (position - windowStart));
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (in != null) {
+			in.close();
+		}
+		if (raf != null) {
+			raf.close();
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package com.datastax.refdata.snapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import com.datastax.refdata.model.Dividend;
+import com.datastax.refdata.model.HistoricSeries;
+
+/**
+ * Writes daily prices and dividends to a snapshot, one block per exchange symbol, see {@link SnapshotFormat}. Blocks
+ * are encoded and compressed by the calling thread and appended in the order the calls finish. Thread-safe.
+ */
+public class SnapshotWriter implements Closeable {
+
+	private final DataOutputStream out;
+	private final SnapshotCompression compression;
+	private long rawBytes;
+	private long storedBytes;
+
+	public SnapshotWriter(File file, SnapshotCompression compression) throws IOException {
+		this.compression = compression;
+		this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1024 * 1024));
+		out.writeInt(SnapshotFormat.MAGIC);
+		out.writeInt(SnapshotFormat.VERSION);
+		out.writeByte(compression.ordinal());
+	}
+
+	public void writeHistoricData(HistoricSeries series) throws IOException {
+		if (series.isEmpty()) {
+			return;
+		}
+		int rows = series.size();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + rows * 52);
+		DataOutputStream payload = new DataOutputStream(bytes);
+
+		SnapshotFormat.writeString(payload, series.getExchange());
+		SnapshotFormat.writeString(payload, series.getSymbol());
+		payload.writeInt(rows);
+		writeDates(payload, series);
+
+		for (int i = 0; i < rows; i++) {
+			payload.writeDouble(series.getOpen(i));
+		}
+		for (int i = 0; i < rows; i++) {
+			payload.writeDouble(series.getHigh(i));
+		}
+		for (int i = 0; i < rows; i++) {
+			payload.writeDouble(series.getLow(i));
+		}
+		for (int i = 0; i < rows; i++) {
+			payload.writeDouble(series.getClose(i));
+		}
+		for (int i = 0; i < rows; i++) {
+			payload.writeDouble(series.getAdjClose(i));
+		}
+		for (int i = 0; i < rows; i++) {
+			SnapshotFormat.writeVarLong(payload, series.getVolume(i));
+		}
+		writeBlock(SnapshotFormat.HISTORIC_DATA, bytes.toByteArray());
+	}
+
+	/**
+	 * @param list the dividends of one exchange symbol, sorted by date descending.
+	 */
+	public void writeDividends(List<Dividend> list) throws IOException {
+		if (list.isEmpty()) {
+			return;
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + list.size() * 12);
+		DataOutputStream payload = new DataOutputStream(bytes);
+
+		SnapshotFormat.writeString(payload, list.get(0).getExchange());
+		SnapshotFormat.writeString(payload, list.get(0).getSymbol());
+		payload.writeInt(list.size());
+
+		long previous = 0;
+		for (Dividend dividend : list) {
+			SnapshotFormat.writeVarLong(payload, dividend.getDate().getTime() - previous);
+			previous = dividend.getDate().getTime();
+		}
+		for (Dividend dividend : list) {
+			payload.writeDouble(dividend.getDividend());
+		}
+		writeBlock(SnapshotFormat.DIVIDENDS, bytes.toByteArray());
+	}
+
+	private static void writeDates(DataOutputStream payload, HistoricSeries series) throws IOException {
+		// Consecutive trading days are a few days apart, so the deltas take 4 or 5 bytes instead of 8
+		long previous = 0;
+		for (int i = 0; i < series.size(); i++) {
+			SnapshotFormat.writeVarLong(payload, series.getDate(i) - previous);
+			previous = series.getDate(i);
+		}
+	}
+
+	private void writeBlock(byte kind, byte[] raw) throws IOException {
+		byte[] stored = compression.compress(raw);
+		synchronized (this) {
+			out.writeByte(kind);
+			out.writeInt(raw.length);
+			out.writeInt(stored.length);
+			out.write(stored);
+			rawBytes += raw.length;
+			storedBytes += stored.length;
+		}
+	}
+
+	public synchronized long getRawBytes() {
+		return rawBytes;
+	}
+
+	public synchronized long getStoredBytes() {
+		return storedBytes;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		out.writeByte(SnapshotFormat.END);
+		out.close();
+	}
+}
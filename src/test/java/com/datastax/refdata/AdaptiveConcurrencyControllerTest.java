@@ -0,0 +1,120 @@
+package com.datastax.refdata;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class AdaptiveConcurrencyControllerTest {
+
+	private static final long MILLIS = 1000000;
+
+	private final AdaptiveConcurrencyController controller = new AdaptiveConcurrencyController();
+
+	@Test
+	public void limitsStartAtMinAndDoubleUpToTheirMax() throws InterruptedException {
+		InFlightLimiter limiter = new InFlightLimiter(20);
+		controller.control("writes", limiter, 1);
+		assertEquals(1, limiter.getLimit());
+
+		for (int expected : new int[] { 2, 4, 8, 16, 20, 20 }) {
+			window(limiter, 10, MILLIS, 0);
+			assertEquals(expected, limiter.getLimit());
+		}
+	}
+
+	@Test
+	public void aLimitThatWasNotReachedDoesNotGrow() throws InterruptedException {
+		InFlightLimiter reached = new InFlightLimiter(100);
+		InFlightLimiter idle = new InFlightLimiter(100);
+		controller.control("reached", reached, 4);
+		controller.control("idle", idle, 4);
+
+		window(reached, 10, MILLIS, 0);
+
+		assertEquals(8, reached.getLimit());
+		assertEquals(4, idle.getLimit());
+	}
+
+	@Test
+	public void slowWritesShrinkTheLimitsThenGrowthIsByTheSquareRoot() throws InterruptedException {
+		InFlightLimiter limiter = new InFlightLimiter(1000);
+		controller.control("writes", limiter, 100);
+
+		// The first window sets the baseline, a mean over twice it is overload
+		window(limiter, 10, MILLIS, 0);
+		assertEquals(200, limiter.getLimit());
+		window(limiter, 10, 3 * MILLIS, 0);
+		assertEquals(180, limiter.getLimit());
+
+		// No longer doubling: 180 + sqrt(180)
+		window(limiter, 10, MILLIS, 0);
+		assertEquals(193, limiter.getLimit());
+		window(limiter, 10, MILLIS, 0);
+		assertEquals(207, limiter.getLimit());
+	}
+
+	@Test
+	public void moreThanOnePercentErrorsShrinksTheLimits() throws InterruptedException {
+		InFlightLimiter limiter = new InFlightLimiter(1000);
+		controller.control("writes", limiter, 100);
+
+		window(limiter, 100, MILLIS, 1);
+		assertEquals(200, limiter.getLimit());
+		window(limiter, 100, MILLIS, 2);
+		assertEquals(180, limiter.getLimit());
+	}
+
+	@Test
+	public void limitsNeverShrinkBelowMin() throws InterruptedException {
+		InFlightLimiter limiter = new InFlightLimiter(100);
+		controller.control("writes", limiter, 8);
+		window(limiter, 10, MILLIS, 0);
+		assertEquals(16, limiter.getLimit());
+
+		for (int i = 0; i < 20; i++) {
+			window(limiter, 10, MILLIS, 10);
+		}
+		assertEquals(8, limiter.getLimit());
+	}
+
+	@Test
+	public void aMinAboveTheLimitIsLoweredToIt() {
+		InFlightLimiter limiter = new InFlightLimiter(4);
+		controller.control("writes", limiter, 10);
+
+		assertEquals(4, limiter.getLimit());
+	}
+
+	@Test
+	public void aWindowWithoutWritesChangesNothing() throws InterruptedException {
+		InFlightLimiter limiter = new InFlightLimiter(100);
+		controller.control("writes", limiter, 4);
+		saturate(limiter);
+
+		controller.adjust();
+
+		assertEquals(4, limiter.getLimit());
+	}
+
+	/**
+	 * Fills the limiter, samples the writes and ends the window.
+	 */
+	private void window(InFlightLimiter limiter, int writes, long latencyNanos, int errors)
+			throws InterruptedException {
+		saturate(limiter);
+		for (int i = 0; i < writes; i++) {
+			controller.onSample(latencyNanos, i >= errors);
+		}
+		controller.adjust();
+	}
+
+	private static void saturate(InFlightLimiter limiter) throws InterruptedException {
+		int limit = limiter.getLimit();
+		for (int i = 0; i < limit; i++) {
+			limiter.acquire();
+		}
+		for (int i = 0; i < limit; i++) {
+			limiter.release();
+		}
+	}
+}
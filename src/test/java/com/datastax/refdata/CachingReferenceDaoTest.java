@@ -0,0 +1,77 @@
+package com.datastax.refdata;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.datastax.refdata.model.ExchangeSymbol;
+import com.datastax.refdata.model.HistoricData;
+import com.datastax.refdata.model.HistoricSeries;
+
+public class CachingReferenceDaoTest {
+
+	private final ExchangeSymbol elg = new ExchangeSymbol("AMEX", "ELG");
+
+	@Test
+	public void writesDropTheCachedValue() throws Exception {
+		CachingReferenceDao dao = new CachingReferenceDao(new InMemoryReferenceDao(), 100, 60);
+
+		dao.insertHistoricData(row(1000));
+		assertEquals(1000, dao.selectLastUpdatedDate(elg).getTime());
+		assertEquals(1000, dao.selectLatestHistoricData(elg).getDate().getTime());
+
+		dao.insertHistoricData(row(2000));
+		assertEquals(2000, dao.selectLastUpdatedDate(elg).getTime());
+		assertEquals(2000, dao.selectLatestHistoricData(elg).getDate().getTime());
+	}
+
+	@Test
+	public void aLoadRacingAWriteIsNotReturnedAfterTheWrite() throws Exception {
+		final CountDownLatch loaded = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicBoolean hold = new AtomicBoolean(true);
+
+		// Holds the first read after it has read the date from before the write
+		InMemoryReferenceDao store = new InMemoryReferenceDao() {
+			@Override
+			public Date selectLastUpdatedDate(ExchangeSymbol exchangeSymbol) {
+				Date date = super.selectLastUpdatedDate(exchangeSymbol);
+				if (hold.getAndSet(false)) {
+					loaded.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				return date;
+			}
+		};
+		final CachingReferenceDao dao = new CachingReferenceDao(store, 100, 60);
+		dao.insertHistoricData(row(1000));
+
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				dao.selectLastUpdatedDate(elg);
+			}
+		});
+		reader.start();
+		loaded.await();
+
+		dao.insertHistoricData(row(2000));
+		release.countDown();
+		reader.join();
+
+		assertEquals(2000, dao.selectLastUpdatedDate(elg).getTime());
+	}
+
+	private static List<HistoricData> row(long date) {
+		return new HistoricSeries.Builder("AMEX", "ELG").add(date, 1, 1, 1, 1, 1, 1).build().asList();
+	}
+}
@@ -0,0 +1,110 @@
+package com.datastax.refdata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.datastax.refdata.model.Dividend;
+import com.datastax.refdata.model.HistoricData;
+import com.datastax.refdata.model.HistoricSeries;
+import com.datastax.refdata.snapshot.SnapshotCompression;
+import com.datastax.refdata.snapshot.SnapshotWriter;
+
+public class DataLoaderTest {
+
+	private static final String HEADER = "exchange,stock_symbol,date,stock_price_open,stock_price_high,"
+			+ "stock_price_low,stock_price_close,stock_volume,stock_price_adj_close\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final BlockingQueue<List<HistoricData>> queueHistoricData = new LinkedBlockingQueue<List<HistoricData>>();
+	private final BlockingQueue<List<Dividend>> queueDividend = new LinkedBlockingQueue<List<Dividend>>();
+
+	@Test
+	public void loadsEveryFile() throws IOException {
+		write("AMEX_daily_prices_A.csv", HEADER + "AMEX,AAA,2010-01-02,1,2,0.5,1.5,100,1.5\n");
+		write("AMEX_daily_prices_B.csv", HEADER + "AMEX,BBB,2010-01-02,1,2,0.5,1.5,100,1.5\n");
+
+		for (String readMode : new String[] { DataLoader.READ_MODE_STREAM, DataLoader.READ_MODE_MAPPED }) {
+			DataLoader dataLoader = dataLoader(readMode);
+			dataLoader.startProcessingDailyPrices();
+
+			assertEquals(readMode, 0, dataLoader.getFailedSources());
+			assertNull(readMode, dataLoader.getFailure());
+			assertEquals(readMode, 2, queueHistoricData.size());
+			queueHistoricData.clear();
+		}
+	}
+
+	@Test
+	public void recordsAFileThatCannotBeParsedAndLoadsTheOthers() throws IOException {
+		write("AMEX_daily_prices_A.csv", HEADER + "AMEX,AAA,2010-01-02,1,2,0.5,1.5,oops,1.5\n");
+		write("AMEX_daily_prices_B.csv", HEADER + "AMEX,BBB,2010-01-02,1,2,0.5,1.5,100,1.5\n");
+
+		for (String readMode : new String[] { DataLoader.READ_MODE_STREAM, DataLoader.READ_MODE_MAPPED }) {
+			DataLoader dataLoader = dataLoader(readMode);
+			dataLoader.startProcessingDailyPrices();
+
+			assertEquals(readMode, 1, dataLoader.getFailedSources());
+			assertTrue(readMode, dataLoader.getFailure() instanceof NumberFormatException);
+			assertEquals(readMode, 1, queueHistoricData.size());
+			assertEquals(readMode, "BBB", queueHistoricData.poll().get(0).getSymbol());
+		}
+	}
+
+	@Test
+	public void recordsATruncatedSnapshot() throws IOException {
+		File snapshot = folder.newFile("refdata.snapshot");
+		SnapshotWriter writer = new SnapshotWriter(snapshot, SnapshotCompression.NONE);
+		writer.writeHistoricData(new HistoricSeries.Builder("AMEX", "AAA").add(1000, 1, 2, 0.5, 1.5, 100, 1.5).build());
+		writer.writeHistoricData(new HistoricSeries.Builder("AMEX", "BBB").add(1000, 1, 2, 0.5, 1.5, 100, 1.5).build());
+		writer.close();
+		byte[] bytes = Files.readAllBytes(snapshot.toPath());
+		Files.write(snapshot.toPath(), Arrays.copyOf(bytes, bytes.length - 10));
+
+		for (String readMode : new String[] { DataLoader.READ_MODE_STREAM, DataLoader.READ_MODE_MAPPED }) {
+			DataLoader dataLoader = dataLoader(readMode);
+			dataLoader.setSnapshotFile(snapshot);
+			dataLoader.startProcessingDailyPrices();
+
+			assertEquals(readMode, 1, dataLoader.getFailedSources());
+			assertTrue(readMode, dataLoader.getFailure() instanceof EOFException);
+			assertEquals(readMode, 1, queueHistoricData.size());
+			queueHistoricData.clear();
+		}
+	}
+
+	@Test
+	public void recordsAMissingCsvDirectory() {
+		DataLoader dataLoader = dataLoader(DataLoader.READ_MODE_STREAM);
+		dataLoader.setCsvDirectory(new File(folder.getRoot(), "missing"));
+		dataLoader.startProcessingDailyPrices();
+
+		assertEquals(1, dataLoader.getFailedSources());
+	}
+
+	private DataLoader dataLoader(String readMode) {
+		DataLoader dataLoader = new DataLoader(queueHistoricData, queueDividend);
+		dataLoader.setCsvDirectory(folder.getRoot());
+		dataLoader.setReadMode(readMode, 64 * 1024 * 1024);
+		return dataLoader;
+	}
+
+	private void write(String name, String csv) throws IOException {
+		Files.write(new File(folder.getRoot(), name).toPath(), csv.getBytes("US-ASCII"));
+	}
+}
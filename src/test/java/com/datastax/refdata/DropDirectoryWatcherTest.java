@@ -0,0 +1,231 @@
+package com.datastax.refdata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.datastax.refdata.model.Dividend;
+import com.datastax.refdata.model.HistoricData;
+
+public class DropDirectoryWatcherTest {
+
+	private static final String HEADER = "exchange,stock_symbol,date,stock_price_open,stock_price_high,"
+			+ "stock_price_low,stock_price_close,stock_volume,stock_price_adj_close\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final BlockingQueue<List<HistoricData>> queueHistoricData = new LinkedBlockingQueue<List<HistoricData>>();
+	private final BlockingQueue<List<Dividend>> queueDividend = new LinkedBlockingQueue<List<Dividend>>();
+	private final AtomicLong writtenLists = new AtomicLong(0);
+	private final AtomicLong failedLists = new AtomicLong(0);
+	private final AtomicReference<Throwable> watchFailure = new AtomicReference<Throwable>();
+
+	private File directory;
+	private File checkpointFile;
+	private DropDirectoryWatcher watcher;
+	private Thread watchThread;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = folder.newFolder("drop");
+		checkpointFile = new File(folder.getRoot(), "checkpoints.properties");
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		if (watcher != null) {
+			stopWatching();
+		}
+	}
+
+	@Test
+	public void resumesFromTheSavedOffset() throws Exception {
+		File file = write("AMEX_daily_prices_A.csv", HEADER + rows("AAA", 2));
+		long resumeFrom = file.length();
+		append(file, rows("BBB", 2));
+		Properties saved = new Properties();
+		saved.setProperty(file.getName(), Long.toString(resumeFrom));
+		store(saved);
+
+		startWatching(new DataLoader(queueHistoricData, queueDividend));
+
+		assertEquals("BBB", written().get(0).getSymbol());
+		assertNull(queueHistoricData.poll(200, TimeUnit.MILLISECONDS));
+		stopWatching();
+
+		assertEquals(Long.toString(file.length()), loadCheckpoint().getProperty(file.getName()));
+	}
+
+	@Test
+	public void checkpointsAppendedRowsOnceTheyAreWritten() throws Exception {
+		File file = write("AMEX_daily_prices_A.csv", HEADER + rows("AAA", 2));
+		startWatching(new DataLoader(queueHistoricData, queueDividend));
+		assertEquals("AAA", written().get(0).getSymbol());
+
+		append(file, rows("BBB", 3));
+		List<HistoricData> list = next();
+		assertEquals(3, list.size());
+		assertEquals("BBB", list.get(0).getSymbol());
+
+		// Not saved while the list is still being written
+		Thread.sleep(200);
+		assertFalse(Long.toString(file.length()).equals(loadCheckpoint().getProperty(file.getName())));
+
+		// Saved by the watch loop itself once it has been written
+		writtenLists.incrementAndGet();
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!Long.toString(file.length()).equals(loadCheckpoint().getProperty(file.getName()))) {
+			assertTrue("The checkpoint was not saved", System.currentTimeMillis() < deadline);
+			Thread.sleep(50);
+		}
+	}
+
+	@Test
+	public void doesNotMoveTheCheckpointOnAfterAFailedList() throws Exception {
+		File file = write("AMEX_daily_prices_A.csv", HEADER + rows("AAA", 2));
+		startWatching(new DataLoader(queueHistoricData, queueDividend));
+		assertNotNull(next());
+		failedLists.incrementAndGet();
+
+		append(file, rows("BBB", 2));
+		assertEquals("BBB", written().get(0).getSymbol());
+		stopWatching();
+
+		assertFalse(checkpointFile.exists());
+	}
+
+	@Test
+	public void keepsWatchingWhenAFileDisappearsMidPass() throws Exception {
+		write("AMEX_daily_prices_A.csv", HEADER + rows("AAA", 2));
+		File b = write("AMEX_daily_prices_B.csv", HEADER + rows("BBB", 2));
+
+		// A is removed between being listed and being read
+		DataLoader dataLoader = new DataLoader(queueHistoricData, queueDividend) {
+			@Override
+			public long processFileFrom(File file, long offset) throws IOException, InterruptedException {
+				if (file.getName().equals("AMEX_daily_prices_A.csv")) {
+					Files.delete(file.toPath());
+				}
+				return super.processFileFrom(file, offset);
+			}
+		};
+		startWatching(dataLoader);
+
+		assertEquals("BBB", written().get(0).getSymbol());
+		File c = write("AMEX_daily_prices_C.csv", HEADER + rows("CCC", 2));
+		assertEquals("CCC", written().get(0).getSymbol());
+		assertTrue(watchThread.isAlive());
+		stopWatching();
+
+		Properties checkpoint = loadCheckpoint();
+		assertNull(checkpoint.getProperty("AMEX_daily_prices_A.csv"));
+		assertEquals(Long.toString(b.length()), checkpoint.getProperty(b.getName()));
+		assertEquals(Long.toString(c.length()), checkpoint.getProperty(c.getName()));
+	}
+
+	private void startWatching(DataLoader dataLoader) {
+		watcher = new DropDirectoryWatcher(directory, dataLoader, writtenLists, failedLists, checkpointFile);
+		watchThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					watcher.run();
+				} catch (Throwable e) {
+					watchFailure.set(e);
+				}
+			}
+		}, "drop-directory-watcher");
+		watchThread.start();
+	}
+
+	/**
+	 * Stops the watcher and saves the last checkpoint, like Main once the writers have finished.
+	 */
+	private void stopWatching() throws InterruptedException {
+		watcher.stop();
+		watchThread.join();
+		watcher.checkpoint();
+		watcher = null;
+		assertNull(watchFailure.get());
+	}
+
+	private List<HistoricData> next() throws InterruptedException {
+		List<HistoricData> list = queueHistoricData.poll(10, TimeUnit.SECONDS);
+		assertNotNull("Nothing was queued", list);
+		return list;
+	}
+
+	/**
+	 * @return the next queued list, counted as written.
+	 */
+	private List<HistoricData> written() throws InterruptedException {
+		List<HistoricData> list = next();
+		writtenLists.incrementAndGet();
+		return list;
+	}
+
+	private static String rows(String symbol, int count) {
+		StringBuilder rows = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			rows.append("AMEX,").append(symbol).append(",2010-01-").append(10 + i).append(",1,2,0.5,1.5,100,1.5\n");
+		}
+		return rows.toString();
+	}
+
+	private File write(String name, String csv) throws IOException {
+		File file = new File(directory, name);
+		Files.write(file.toPath(), csv.getBytes("US-ASCII"));
+		return file;
+	}
+
+	private static void append(File file, String csv) throws IOException {
+		Files.write(file.toPath(), csv.getBytes("US-ASCII"), StandardOpenOption.APPEND);
+	}
+
+	private void store(Properties properties) throws IOException {
+		OutputStream out = new FileOutputStream(checkpointFile);
+		try {
+			properties.store(out, null);
+		} finally {
+			out.close();
+		}
+	}
+
+	private Properties loadCheckpoint() throws IOException {
+		Properties properties = new Properties();
+		if (checkpointFile.exists()) {
+			InputStream in = new FileInputStream(checkpointFile);
+			try {
+				properties.load(in);
+			} finally {
+				in.close();
+			}
+		}
+		return properties;
+	}
+}
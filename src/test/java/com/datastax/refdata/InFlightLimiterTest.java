@@ -0,0 +1,134 @@
+package com.datastax.refdata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class InFlightLimiterTest {
+
+	private Thread waiter;
+
+	@After
+	public void tearDown() throws InterruptedException {
+		if (waiter != null) {
+			waiter.interrupt();
+			waiter.join();
+		}
+	}
+
+	@Test
+	public void blocksOnceTheLimitIsReached() throws InterruptedException {
+		InFlightLimiter limiter = new InFlightLimiter(2);
+		limiter.acquire();
+		limiter.acquire();
+
+		CountDownLatch acquired = acquireInBackground(limiter);
+		assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+
+		limiter.release();
+		assertTrue(acquired.await(10, TimeUnit.SECONDS));
+		assertEquals(2, limiter.getInFlight());
+	}
+
+	@Test
+	public void shrinkingBelowThePermitsHeldWaitsForEnoughReleases() throws InterruptedException {
+		InFlightLimiter limiter = new InFlightLimiter(4);
+		for (int i = 0; i < 4; i++) {
+			limiter.acquire();
+		}
+
+		limiter.setLimit(2);
+		assertEquals(2, limiter.getLimit());
+		assertEquals(4, limiter.getInFlight());
+
+		// 3 and then 2 in flight are still not below the new limit
+		CountDownLatch acquired = acquireInBackground(limiter);
+		limiter.release();
+		limiter.release();
+		assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+
+		limiter.release();
+		assertTrue(acquired.await(10, TimeUnit.SECONDS));
+		assertEquals(2, limiter.getInFlight());
+	}
+
+	@Test
+	public void growingBackLetsWaitingRequestsThrough() throws InterruptedException {
+		InFlightLimiter limiter = new InFlightLimiter(4);
+		for (int i = 0; i < 4; i++) {
+			limiter.acquire();
+		}
+		limiter.setLimit(1);
+
+		CountDownLatch acquired = acquireInBackground(limiter);
+		assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+
+		limiter.setLimit(5);
+		assertTrue(acquired.await(10, TimeUnit.SECONDS));
+		assertEquals(5, limiter.getInFlight());
+
+		// Once everything is released the full limit is available again
+		for (int i = 0; i < 5; i++) {
+			limiter.release();
+		}
+		for (int i = 0; i < 5; i++) {
+			limiter.acquire();
+		}
+		assertEquals(5, limiter.getInFlight());
+	}
+
+	@Test
+	public void limitsBelowOneAreRejected() {
+		InFlightLimiter limiter = new InFlightLimiter(1);
+		try {
+			limiter.setLimit(0);
+			fail("A limit of 0 was accepted");
+		} catch (IllegalArgumentException e) {
+			assertEquals(1, limiter.getLimit());
+		}
+		try {
+			new InFlightLimiter(0);
+			fail("A limit of 0 was accepted");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void peakIsTheMostInFlightSinceThePreviousCall() throws InterruptedException {
+		InFlightLimiter limiter = new InFlightLimiter(4);
+		limiter.acquire();
+		limiter.acquire();
+		limiter.acquire();
+		limiter.release();
+		limiter.release();
+
+		assertEquals(3, limiter.getAndResetPeak());
+		// Starts again from the requests still in flight
+		assertEquals(1, limiter.getAndResetPeak());
+	}
+
+	private CountDownLatch acquireInBackground(final InFlightLimiter limiter) {
+		final CountDownLatch acquired = new CountDownLatch(1);
+		waiter = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					limiter.acquire();
+					acquired.countDown();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}, "in-flight-waiter");
+		waiter.start();
+		return acquired;
+	}
+}
@@ -0,0 +1,24 @@
+package com.datastax.refdata;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.datastax.refdata.model.ExchangeSymbol;
+import com.datastax.refdata.model.HistoricSeries;
+
+public class InMemoryReferenceDaoTest {
+
+	@Test
+	public void lastUpdatedDateNeverMovesBackWithoutAnAggregator() {
+		InMemoryReferenceDao dao = new InMemoryReferenceDao();
+		ExchangeSymbol elg = new ExchangeSymbol("AMEX", "ELG");
+
+		dao.insertHistoricData(new HistoricSeries.Builder("AMEX", "ELG").add(2000, 1, 1, 1, 1, 1, 1).build().asList());
+		dao.insertHistoricData(new HistoricSeries.Builder("AMEX", "ELG").add(1000, 1, 1, 1, 1, 1, 1).build().asList());
+		assertEquals(2000, dao.selectLastUpdatedDate(elg).getTime());
+
+		dao.insertHistoricData(new HistoricSeries.Builder("AMEX", "ELG").add(3000, 1, 1, 1, 1, 1, 1).build().asList());
+		assertEquals(3000, dao.selectLastUpdatedDate(elg).getTime());
+	}
+}
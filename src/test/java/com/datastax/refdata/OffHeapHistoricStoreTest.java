@@ -0,0 +1,187 @@
+package com.datastax.refdata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.datastax.refdata.model.ExchangeSymbol;
+import com.datastax.refdata.model.HistoricData;
+import com.datastax.refdata.model.HistoricDataColumn;
+import com.datastax.refdata.model.HistoricDataQuery;
+import com.datastax.refdata.model.HistoricSeries;
+
+public class OffHeapHistoricStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final ExchangeSymbol elg = new ExchangeSymbol("AMEX", "ELG");
+
+	@Test
+	public void insertedRowsAreReadBack() throws IOException {
+		for (OffHeapHistoricStore store : stores(1024)) {
+			store.put(series(50, 40, 30, 20, 10));
+
+			HistoricSeries series = store.get(elg);
+			assertDates(series, 50, 40, 30, 20, 10);
+			assertEquals(30, series.getOpen(2), 0);
+			assertEquals(31, series.getHigh(2), 0);
+			assertEquals(32, series.getLow(2), 0);
+			assertEquals(33, series.getClose(2), 0);
+			assertEquals(34, series.getVolume(2));
+			assertEquals(35, series.getAdjClose(2), 0);
+			assertEquals(5, store.getRowCount(elg));
+			assertTrue(store.getExchangeSymbols().contains(elg));
+		}
+	}
+
+	@Test
+	public void writingASymbolAgainMergesItsRows() throws IOException {
+		for (OffHeapHistoricStore store : stores(1024)) {
+			store.put(series(10, 8, 6));
+			store.put(new HistoricSeries.Builder("AMEX", "ELG").add(12, 100, 0, 0, 0, 0, 0).add(8, 100, 0, 0, 0, 0, 0)
+					.build());
+
+			HistoricSeries series = store.get(elg);
+			assertDates(series, 12, 10, 8, 6);
+			assertEquals(100, series.getOpen(0), 0);
+			assertEquals(10, series.getOpen(1), 0);
+			assertEquals(100, series.getOpen(2), 0);
+			assertEquals(6, series.getOpen(3), 0);
+		}
+	}
+
+	@Test
+	public void selectReturnsTheRangeFromInclusiveToExclusive() throws IOException {
+		for (OffHeapHistoricStore store : stores(1024)) {
+			store.put(series(50, 40, 30, 20, 10));
+
+			assertSelects(store, query().withRange(new Date(20), new Date(40)), 30, 20);
+			assertSelects(store, query().withRange(new Date(15), new Date(45)), 40, 30, 20);
+			assertSelects(store, query().withRange(new Date(10), new Date(51)), 50, 40, 30, 20, 10);
+			assertSelects(store, query().withRange(null, new Date(30)), 20, 10);
+			assertSelects(store, query().withRange(new Date(30), null), 50, 40, 30);
+			assertSelects(store, query().withRange(new Date(60), new Date(70)));
+			assertSelects(store, query().withRange(new Date(40), new Date(20)));
+			assertSelects(store, query().withRange(new Date(10), null).withLimit(2), 50, 40);
+			assertSelects(store, query(), 50, 40, 30, 20, 10);
+		}
+	}
+
+	@Test
+	public void selectReadsOnlyTheProjectedColumns() throws IOException {
+		for (OffHeapHistoricStore store : stores(1024)) {
+			store.put(series(50, 40));
+
+			HistoricData row = store.select(query().withColumns(HistoricDataColumn.CLOSE)).next();
+			assertEquals(50, row.getDate().getTime());
+			assertEquals(53, row.getClose(), 0);
+			assertTrue(Double.isNaN(row.getOpen()));
+			assertTrue(Double.isNaN(row.getAdjClose()));
+			assertEquals(0, row.getVolume());
+		}
+	}
+
+	@Test
+	public void anUnknownSymbolHasNoRows() throws IOException {
+		for (OffHeapHistoricStore store : stores(1024)) {
+			assertFalse(store.select(query()).hasNext());
+			assertNull(store.get(elg));
+			assertEquals(0, store.getRowCount(elg));
+		}
+	}
+
+	@Test
+	public void replacedBlocksAreReclaimed() throws IOException {
+		File directory = folder.newFolder("segments");
+		OffHeapHistoricStore[] stores = { new OffHeapHistoricStore(null, 1024),
+				new OffHeapHistoricStore(directory, 1024) };
+		for (OffHeapHistoricStore store : stores) {
+			store.put(new HistoricSeries.Builder("AMEX", "OTHER").add(1, 1, 1, 1, 1, 1, 1).build());
+			store.put(series(50, 40, 30));
+
+			// Every write replaces the whole block of ELG
+			for (int i = 0; i < 1000; i++) {
+				store.put(new HistoricSeries.Builder("AMEX", "ELG").add(40, i, 0, 0, 0, 0, 0).build());
+			}
+
+			assertTrue(store.toString(), store.getCompactions() > 0);
+			assertTrue(store.toString(), store.getAllocatedBytes() <= 2 * store.getLiveBytes() + 2 * 1024);
+			HistoricSeries series = store.get(elg);
+			assertDates(series, 50, 40, 30);
+			assertEquals(999, series.getOpen(1), 0);
+			assertEquals(1, store.getRowCount(new ExchangeSymbol("AMEX", "OTHER")));
+		}
+
+		// The files of the released segments are deleted
+		assertEquals(stores[1].getAllocatedBytes() / 1024, directory.list().length);
+	}
+
+	@Test
+	public void anIteratorOpenedBeforeACompactionStillReadsItsRows() throws IOException {
+		OffHeapHistoricStore store = new OffHeapHistoricStore(folder.newFolder("segments"), 1024);
+		store.put(series(50, 40, 30));
+		Iterator<HistoricData> rows = store.select(query());
+		assertEquals(50, rows.next().getOpen(), 0);
+
+		int compactions = store.getCompactions();
+		for (int i = 0; store.getCompactions() == compactions; i++) {
+			store.put(new HistoricSeries.Builder("AMEX", "ELG").add(40, i, 0, 0, 0, 0, 0).build());
+		}
+
+		assertEquals(40, rows.next().getOpen(), 0);
+		assertEquals(30, rows.next().getOpen(), 0);
+	}
+
+	private OffHeapHistoricStore[] stores(int segmentBytes) throws IOException {
+		return new OffHeapHistoricStore[] { new OffHeapHistoricStore(),
+				new OffHeapHistoricStore(folder.newFolder(), segmentBytes) };
+	}
+
+	private HistoricDataQuery query() {
+		return new HistoricDataQuery(elg);
+	}
+
+	/**
+	 * @return a series with the given dates, each value the date plus the column number.
+	 */
+	private static HistoricSeries series(long... dates) {
+		HistoricSeries.Builder builder = new HistoricSeries.Builder("AMEX", "ELG");
+		for (long date : dates) {
+			builder.add(date, date, date + 1, date + 2, date + 3, (int) date + 4, date + 5);
+		}
+		return builder.build();
+	}
+
+	private static void assertSelects(OffHeapHistoricStore store, HistoricDataQuery query, long... dates) {
+		List<Long> selected = new ArrayList<Long>();
+		Iterator<HistoricData> rows = store.select(query);
+		while (rows.hasNext()) {
+			selected.add(rows.next().getDate().getTime());
+		}
+		List<Long> expected = new ArrayList<Long>();
+		for (long date : dates) {
+			expected.add(date);
+		}
+		assertEquals(query.toString(), expected, selected);
+	}
+
+	private static void assertDates(HistoricSeries series, long... dates) {
+		assertEquals(series.toString(), dates.length, series.size());
+		for (int i = 0; i < dates.length; i++) {
+			assertEquals("row " + i, dates[i], series.getDate(i));
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package com.datastax.refdata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class VirtualThreadsTest {
+
+	@Test
+	public void runsEveryTaskOnANewNamedVirtualThread() throws Exception {
+		// Only Java 21 or later has virtual threads, the build itself targets Java 17
+		assumeTrue(VirtualThreads.isAvailable());
+
+		ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("test");
+		try {
+			Callable<Thread> current = new Callable<Thread>() {
+				@Override
+				public Thread call() {
+					return Thread.currentThread();
+				}
+			};
+			Thread first = executor.submit(current).get(10, TimeUnit.SECONDS);
+			Thread second = executor.submit(current).get(10, TimeUnit.SECONDS);
+
+			assertTrue((Boolean) Thread.class.getMethod("isVirtual").invoke(first));
+			assertEquals("test-0", first.getName());
+			assertEquals("test-1", second.getName());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void failsClearlyBelowJava21() {
+		assumeFalse(VirtualThreads.isAvailable());
+
+		try {
+			VirtualThreads.checkAvailable();
+			fail("Virtual threads are not available on Java " + System.getProperty("java.version"));
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("-DthreadMode=" + VirtualThreads.MODE_PLATFORM));
+		}
+		try {
+			VirtualThreads.newThreadPerTaskExecutor("test");
+			fail("Created a virtual thread executor on Java " + System.getProperty("java.version"));
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package com.datastax.refdata.csv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class ByteCsvReaderTest {
+
+	private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+	@Test
+	public void readsADailyPricesRow() throws IOException {
+		ByteCsvReader reader = reader("exchange,stock_symbol,date,open,volume\nAMEX,ELG,2009-12-31,10.25,1200\n", 1);
+
+		assertTrue(reader.nextRow());
+		assertEquals(5, reader.getColumnCount());
+		assertEquals("AMEX", reader.getString(0));
+		assertTrue(reader.fieldEquals(1, "ELG"));
+		assertEquals(1262217600000L, reader.getDateMillis(2));
+		assertEquals(10.25, reader.getDouble(3), 0);
+		assertEquals(1200, reader.getInt(4));
+		assertFalse(reader.nextRow());
+	}
+
+	@Test
+	public void quotesAreKeptAsPartOfTheField() throws IOException {
+		// Quoting is not supported, a quoted comma splits the field and the quotes stay in the values
+		ByteCsvReader reader = reader("AMEX,\"ELG, Inc\",\"1.5\"\n", 0);
+
+		assertTrue(reader.nextRow());
+		assertEquals(4, reader.getColumnCount());
+		assertEquals("\"ELG", reader.getString(1));
+		assertEquals("Inc\"", reader.getString(2));
+		assertFalse(reader.fieldEquals(1, "ELG"));
+		try {
+			reader.getDouble(3);
+			fail("Parsed a quoted number");
+		} catch (NumberFormatException expected) {
+		}
+	}
+
+	@Test
+	public void fieldsAreTrimmedAndComparedIgnoringCase() throws IOException {
+		ByteCsvReader reader = reader("  amex ,\tELG\t, 42 , 1.5 \n", 0);
+
+		assertTrue(reader.nextRow());
+		assertEquals("amex", reader.getString(0));
+		assertTrue(reader.fieldEquals(0, "AMEX"));
+		assertTrue(reader.fieldEquals(1, "elg"));
+		assertFalse(reader.fieldEquals(1, "EL"));
+		assertFalse(reader.fieldEquals(1, null));
+		assertEquals(42, reader.getInt(2));
+		assertEquals(1.5, reader.getDouble(3), 0);
+	}
+
+	@Test
+	public void emptyFieldsAndMissingColumns() throws IOException {
+		ByteCsvReader reader = reader("AMEX,,\n", 0);
+
+		assertTrue(reader.nextRow());
+		assertEquals(3, reader.getColumnCount());
+		assertEquals("", reader.getString(1));
+		assertEquals("", reader.getString(2));
+		try {
+			reader.getInt(1);
+			fail("Parsed an empty int");
+		} catch (NumberFormatException expected) {
+		}
+		try {
+			reader.getDouble(2);
+			fail("Parsed an empty double");
+		} catch (NumberFormatException expected) {
+		}
+		try {
+			reader.getString(3);
+			fail("Read a column past the end of the row");
+		} catch (ArrayIndexOutOfBoundsException expected) {
+		}
+	}
+
+	@Test
+	public void columnsPastTheLastAreJoinedIntoIt() throws IOException {
+		StringBuilder row = new StringBuilder();
+		for (int i = 0; i < 20; i++) {
+			row.append(i == 0 ? "" : ",").append(i);
+		}
+		ByteCsvReader reader = reader(row.append('\n').toString(), 0);
+
+		assertTrue(reader.nextRow());
+		assertEquals(16, reader.getColumnCount());
+		assertEquals(14, reader.getInt(14));
+		assertEquals("15,16,17,18,19", reader.getString(15));
+	}
+
+	@Test
+	public void skipsEmptyLinesAndHandlesCrLfAndNoFinalNewLine() throws IOException {
+		ByteCsvReader reader = reader("header\r\n\r\n\nAMEX,1\r\n\nAMEX,2", 1);
+
+		assertTrue(reader.nextRow());
+		assertEquals(1, reader.getInt(1));
+		assertTrue(reader.nextRow());
+		assertEquals("2", reader.getString(1));
+		assertFalse(reader.nextRow());
+		assertFalse(reader.nextRow());
+	}
+
+	@Test
+	public void linesLongerThanTheBufferAreRead() throws IOException {
+		StringBuilder symbol = new StringBuilder();
+		for (int i = 0; i < 200 * 1024; i++) {
+			symbol.append((char) ('A' + i % 26));
+		}
+		ByteCsvReader reader = reader("AMEX," + symbol + ",7\nAMEX,ELG,8\n", 0);
+
+		assertTrue(reader.nextRow());
+		assertEquals(symbol.toString(), reader.getString(1));
+		assertEquals(7, reader.getInt(2));
+		assertTrue(reader.nextRow());
+		assertEquals(8, reader.getInt(2));
+	}
+
+	@Test
+	public void numbersMatchTheJdkParsers() throws IOException {
+		String[] doubles = { "0", "-0", "+3.5", "0.1", ".5", "5.", "1e3", "-2.5E-3", "12345678901234567890.5",
+				"0.000000000000000000000001", "Infinity", "NaN" };
+		StringBuilder csv = new StringBuilder();
+		for (String value : doubles) {
+			csv.append(value).append('\n');
+		}
+		ByteCsvReader reader = reader(csv.toString(), 0);
+		for (String value : doubles) {
+			assertTrue(reader.nextRow());
+			assertEquals(value, Double.doubleToLongBits(Double.parseDouble(value)),
+					Double.doubleToLongBits(reader.getDouble(0)));
+		}
+
+		reader = reader("2147483647\n-2147483648\n+7\n2147483648\n-2147483649\n1.0\n", 0);
+		assertTrue(reader.nextRow());
+		assertEquals(Integer.MAX_VALUE, reader.getInt(0));
+		assertTrue(reader.nextRow());
+		assertEquals(Integer.MIN_VALUE, reader.getInt(0));
+		assertTrue(reader.nextRow());
+		assertEquals(7, reader.getInt(0));
+		for (int i = 0; i < 3; i++) {
+			assertTrue(reader.nextRow());
+			try {
+				reader.getInt(0);
+				fail("Parsed " + reader.getString(0) + " as an int");
+			} catch (NumberFormatException expected) {
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsADateInAnotherFormat() throws IOException {
+		ByteCsvReader reader = reader("31/12/2009\n", 0);
+		assertTrue(reader.nextRow());
+		reader.getDateMillis(0);
+	}
+
+	private static ByteCsvReader reader(String csv, int skipLines) throws IOException {
+		return new ByteCsvReader(new ByteArrayInputStream(csv.getBytes("US-ASCII")), skipLines, new DateDecoder(UTC));
+	}
+}
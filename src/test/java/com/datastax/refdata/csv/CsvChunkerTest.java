@@ -0,0 +1,174 @@
+package com.datastax.refdata.csv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.datastax.refdata.csv.CsvChunker.Chunk;
+
+public class CsvChunkerTest {
+
+	private static final String HEADER = "exchange,stock_symbol,date,stock_price_open\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void chunksEndAtTheNextSymbolWhenTheTargetFallsMidLine() throws IOException {
+		StringBuilder csv = new StringBuilder(HEADER);
+		appendRows(csv, "AAA", 5);
+		appendRows(csv, "BBB", 3);
+		appendRows(csv, "CCC", 4);
+		File file = write(csv.toString().getBytes("US-ASCII"));
+
+		// 10 bytes lands in the middle of the first line of every chunk
+		List<Chunk> chunks = CsvChunker.split(file, 10, 1);
+
+		assertEquals(3, chunks.size());
+		assertEquals(rows("AAA", 5), read(chunks.get(0)));
+		assertEquals(rows("BBB", 3), read(chunks.get(1)));
+		assertEquals(rows("CCC", 4), read(chunks.get(2)));
+		assertContiguous(file, HEADER.length(), chunks);
+	}
+
+	@Test
+	public void chunksNeverSplitASymbolWhenTheTargetFallsOnALineStart() throws IOException {
+		StringBuilder csv = new StringBuilder(HEADER);
+		appendRows(csv, "AAA", 6);
+		appendRows(csv, "BBB", 6);
+		File file = write(csv.toString().getBytes("US-ASCII"));
+
+		// Exactly two lines of AAA, so the target is a line start in the middle of the symbol
+		int target = rows("AAA", 2).length();
+		List<Chunk> chunks = CsvChunker.split(file, target, 1);
+
+		assertEquals(2, chunks.size());
+		assertEquals(rows("AAA", 6), read(chunks.get(0)));
+		assertEquals(rows("BBB", 6), read(chunks.get(1)));
+		assertContiguous(file, HEADER.length(), chunks);
+	}
+
+	@Test
+	public void symbolsSharingAPrefixAreDifferentSymbols() throws IOException {
+		StringBuilder csv = new StringBuilder(HEADER);
+		appendRows(csv, "AB", 3);
+		appendRows(csv, "ABC", 3);
+		File file = write(csv.toString().getBytes("US-ASCII"));
+
+		List<Chunk> chunks = CsvChunker.split(file, 1, 1);
+
+		assertEquals(2, chunks.size());
+		assertEquals(rows("AB", 3), read(chunks.get(0)));
+		assertEquals(rows("ABC", 3), read(chunks.get(1)));
+	}
+
+	@Test
+	public void aSingleSymbolIsOneChunk() throws IOException {
+		StringBuilder csv = new StringBuilder(HEADER);
+		appendRows(csv, "AAA", 20);
+		File file = write(csv.toString().getBytes("US-ASCII"));
+
+		List<Chunk> chunks = CsvChunker.split(file, 16, 1);
+
+		assertEquals(1, chunks.size());
+		assertEquals(rows("AAA", 20), read(chunks.get(0)));
+	}
+
+	@Test
+	public void bytesAbove0x7FAreNotTheEndOfTheFile() throws IOException {
+		ByteArrayOutputStream csv = new ByteArrayOutputStream();
+		csv.write(HEADER.getBytes("US-ASCII"));
+		for (int i = 0; i < 3; i++) {
+			// A 0xFF in the key and another after it, both read as -1 if the byte is sign extended
+			csv.write(new byte[] { 'A', 'M', 'E', 'X', ',', 'A', (byte) 0xFF, ',', '2', '0', '1', '0', ',',
+					(byte) 0xFF, '\n' });
+		}
+		byte[] second = rows("BBB", 2).getBytes("US-ASCII");
+		csv.write(second);
+		File file = write(csv.toByteArray());
+
+		List<Chunk> chunks = CsvChunker.split(file, 1, 1);
+
+		assertEquals(2, chunks.size());
+		assertEquals(second.length, chunks.get(1).getLength());
+		assertEquals(file.length() - second.length, chunks.get(1).getOffset());
+		assertContiguous(file, HEADER.length(), chunks);
+	}
+
+	@Test
+	public void splitsOnlyTheRangeAskedFor() throws IOException {
+		StringBuilder csv = new StringBuilder(HEADER);
+		appendRows(csv, "AAA", 3);
+		appendRows(csv, "BBB", 3);
+		appendRows(csv, "CCC", 3);
+		appendRows(csv, "DDD", 3);
+		File file = write(csv.toString().getBytes("US-ASCII"));
+
+		// From the second line of AAA up to the end of CCC
+		long start = HEADER.length() + rows("AAA", 1).length();
+		long end = HEADER.length() + rows("AAA", 3).length() + rows("BBB", 3).length() + rows("CCC", 3).length();
+		List<Chunk> chunks = CsvChunker.split(file, start, end, 1, 0);
+
+		assertEquals(3, chunks.size());
+		assertEquals(rows("AAA", 3).substring(rows("AAA", 1).length()), read(chunks.get(0)));
+		assertEquals(rows("BBB", 3), read(chunks.get(1)));
+		assertEquals(rows("CCC", 3), read(chunks.get(2)));
+		assertEquals(start, chunks.get(0).getOffset());
+		assertEquals(end, chunks.get(2).getOffset() + chunks.get(2).getLength());
+
+		// One chunk when the target covers the whole range
+		assertEquals(1, CsvChunker.split(file, start, end, end, 0).size());
+	}
+
+	@Test
+	public void emptyFileAfterTheHeaderHasNoChunks() throws IOException {
+		File file = write(HEADER.getBytes("US-ASCII"));
+
+		assertTrue(CsvChunker.split(file, 10, 1).isEmpty());
+	}
+
+	private static void appendRows(StringBuilder csv, String symbol, int count) {
+		csv.append(rows(symbol, count));
+	}
+
+	private static String rows(String symbol, int count) {
+		StringBuilder rows = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			rows.append("AMEX,").append(symbol).append(",2010-01-").append(10 + i).append(",1.5\n");
+		}
+		return rows.toString();
+	}
+
+	private static void assertContiguous(File file, long start, List<Chunk> chunks) {
+		long expectedOffset = start;
+		for (Chunk chunk : chunks) {
+			assertEquals(chunk.toString(), expectedOffset, chunk.getOffset());
+			assertTrue(chunk.toString(), chunk.getLength() > 0);
+			expectedOffset += chunk.getLength();
+		}
+		assertEquals(file.length(), expectedOffset);
+	}
+
+	private static String read(Chunk chunk) throws IOException {
+		MappedByteBuffer buffer = chunk.map();
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return new String(bytes, "US-ASCII");
+	}
+
+	private File write(byte[] content) throws IOException {
+		File file = folder.newFile("AMEX_daily_prices.csv");
+		Files.write(file.toPath(), content);
+		return file;
+	}
+}
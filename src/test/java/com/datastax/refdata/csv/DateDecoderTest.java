@@ -0,0 +1,87 @@
+package com.datastax.refdata.csv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class DateDecoderTest {
+
+	@Test
+	public void everyDayMatchesSimpleDateFormat() throws ParseException {
+		// New York has daylight saving, so midnight is not a whole number of days from the epoch
+		for (String zone : new String[] { "UTC", "America/New_York" }) {
+			TimeZone timeZone = TimeZone.getTimeZone(zone);
+			DateDecoder decoder = new DateDecoder(timeZone);
+			SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+			format.setTimeZone(timeZone);
+
+			// Crosses every month and year end and the leap days of 2000, 2004, 2008 and 2012
+			Calendar calendar = new GregorianCalendar(timeZone);
+			calendar.clear();
+			calendar.set(1999, Calendar.DECEMBER, 1);
+			while (calendar.get(Calendar.YEAR) < 2013) {
+				String text = format.format(calendar.getTime());
+				long expected = format.parse(text).getTime();
+
+				assertEquals(zone + " " + text, expected, decoder.parseMillis(text));
+				assertEquals(zone + " " + text, expected, decoder.parseMillis(bytes("AMEX," + text), 5, 10));
+				calendar.add(Calendar.DAY_OF_MONTH, 1);
+			}
+		}
+	}
+
+	@Test
+	public void leapDaysAndMonthEnds() throws ParseException {
+		DateDecoder decoder = new DateDecoder(TimeZone.getTimeZone("UTC"));
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+		for (String text : new String[] { "2000-02-29", "2004-02-29", "2012-02-29", "2010-02-28", "2010-03-01",
+				"2009-12-31", "2010-01-01", "1900-03-01" }) {
+			assertEquals(text, format.parse(text).getTime(), decoder.parseMillis(text));
+		}
+		assertEquals(24L * 60 * 60 * 1000, decoder.parseMillis("2000-03-01") - decoder.parseMillis("2000-02-29"));
+	}
+
+	@Test
+	public void repeatedDatesAreDecodedTheSame() {
+		DateDecoder decoder = new DateDecoder(TimeZone.getTimeZone("America/New_York"));
+		long first = decoder.parseMillis("2010-03-14");
+
+		assertEquals(first, decoder.parseMillis("2010-03-14"));
+		assertEquals(first, decoder.parseMillis(bytes("2010-03-14"), 0, 10));
+	}
+
+	@Test
+	public void malformedDatesAreRejected() {
+		DateDecoder decoder = new DateDecoder(TimeZone.getTimeZone("UTC"));
+
+		for (String text : new String[] { "", "2010-01-0", "2010-01-020", "2010/01/02", "2010-1-020", "2010-0a-02",
+				" 2010-01-2", "2010-01-+2", "2010-13-01", "2010-00-10", "2010-01-00", "2010-01-32" }) {
+			try {
+				decoder.parseMillis(text);
+				fail("Parsed " + text);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+			try {
+				decoder.parseMillis(bytes(text), 0, text.length());
+				fail("Parsed bytes " + text);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	private static byte[] bytes(String text) {
+		return text.getBytes(StandardCharsets.US_ASCII);
+	}
+}
@@ -0,0 +1,114 @@
+package com.datastax.refdata.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class HistoricSeriesTest {
+
+	@Test
+	public void builderSortsNewestFirstAndKeepsTheLastRowOfADate() {
+		HistoricSeries series = new HistoricSeries.Builder("AMEX", "ELG").add(1, 1, 1, 1, 1, 1, 1)
+				.add(3, 3, 3, 3, 3, 3, 3).add(2, 2, 2, 2, 2, 2, 2).add(3, 4, 4, 4, 4, 4, 4).build();
+
+		assertDates(series, 3, 2, 1);
+		assertEquals(4, series.getOpen(0), 0);
+		assertEquals(4, series.getVolume(0));
+	}
+
+	@Test
+	public void mergeKeepsOneRowPerDateAndTheOtherSeriesWins() {
+		HistoricSeries stored = series(10, 8, 6, 4, 2);
+		HistoricSeries written = new HistoricSeries.Builder("AMEX", "ELG").add(12, 100, 0, 0, 0, 0, 0)
+				.add(8, 100, 0, 0, 0, 0, 0).add(5, 100, 0, 0, 0, 0, 0).add(2, 100, 0, 0, 0, 0, 0).build();
+
+		HistoricSeries merged = stored.merge(written);
+
+		assertDates(merged, 12, 10, 8, 6, 5, 4, 2);
+		double[] open = { 100, 10, 100, 6, 100, 4, 100 };
+		for (int i = 0; i < open.length; i++) {
+			assertEquals("row " + i, open[i], merged.getOpen(i), 0);
+		}
+	}
+
+	@Test
+	public void mergeOfTheSameDatesReplacesEveryRow() {
+		HistoricSeries stored = series(3, 2, 1);
+		HistoricSeries written = new HistoricSeries.Builder("AMEX", "ELG").add(3, 30, 0, 0, 0, 0, 0)
+				.add(2, 20, 0, 0, 0, 0, 0).add(1, 10, 0, 0, 0, 0, 0).build();
+
+		HistoricSeries merged = stored.merge(written);
+
+		assertDates(merged, 3, 2, 1);
+		assertEquals(30, merged.getOpen(0), 0);
+		assertEquals(10, merged.getOpen(2), 0);
+	}
+
+	@Test
+	public void mergeWithAnEmptySeriesReturnsTheOther() {
+		HistoricSeries series = series(2, 1);
+		HistoricSeries empty = new HistoricSeries.Builder("AMEX", "ELG").build();
+
+		assertSame(series, series.merge(empty));
+		assertSame(series, empty.merge(series));
+	}
+
+	@Test
+	public void countFromAtTheEndsOfTheRange() {
+		HistoricSeries series = series(50, 40, 30, 20, 10);
+
+		// After the newest row
+		assertEquals(0, series.countFrom(60, false));
+		assertEquals(0, series.countFrom(60, true));
+		// On the newest row
+		assertEquals(0, series.countFrom(50, false));
+		assertEquals(1, series.countFrom(50, true));
+		// Between two rows
+		assertEquals(2, series.countFrom(35, false));
+		assertEquals(2, series.countFrom(35, true));
+		// On the oldest row
+		assertEquals(4, series.countFrom(10, false));
+		assertEquals(5, series.countFrom(10, true));
+		// Before the oldest row
+		assertEquals(5, series.countFrom(5, false));
+		assertEquals(5, series.countFrom(Long.MIN_VALUE, true));
+	}
+
+	@Test
+	public void countFromAnEmptyOrSingleRowSeries() {
+		assertEquals(0, new HistoricSeries.Builder("AMEX", "ELG").build().countFrom(1, true));
+
+		HistoricSeries one = series(7);
+		assertEquals(0, one.countFrom(7, false));
+		assertEquals(1, one.countFrom(7, true));
+		assertEquals(1, one.countFrom(6, false));
+	}
+
+	@Test
+	public void headKeepsTheNewestRows() {
+		HistoricSeries series = series(5, 4, 3);
+
+		assertDates(series.head(2), 5, 4);
+		assertDates(series.head(0));
+		assertSame(series, series.head(3));
+	}
+
+	/**
+	 * @return a series with a row on each date, its open set to the date.
+	 */
+	private static HistoricSeries series(long... dates) {
+		HistoricSeries.Builder builder = new HistoricSeries.Builder("AMEX", "ELG");
+		for (long date : dates) {
+			builder.add(date, date, date, date, date, (int) date, date);
+		}
+		return builder.build();
+	}
+
+	private static void assertDates(HistoricSeries series, long... dates) {
+		assertEquals(dates.length, series.size());
+		for (int i = 0; i < dates.length; i++) {
+			assertEquals("row " + i, dates[i], series.getDate(i));
+		}
+	}
+}
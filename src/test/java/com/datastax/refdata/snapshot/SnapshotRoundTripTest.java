@@ -0,0 +1,200 @@
+package com.datastax.refdata.snapshot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.datastax.refdata.model.Dividend;
+import com.datastax.refdata.model.HistoricSeries;
+
+public class SnapshotRoundTripTest {
+
+	private static final long DAY = 24 * 60 * 60 * 1000L;
+
+	// Streamed, mapped in one window, and mapped in windows smaller than any block so every block moves the window
+	private static final long[] WINDOW_SIZES = { 0, 64 * 1024 * 1024, 16 };
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	// Dates either side of 1970, so the first delta is negative for one series and positive for the other
+	private final HistoricSeries elg = new HistoricSeries.Builder("AMEX", "ELG")
+			.add(-3 * DAY, 10.5, 11.25, 10.0, 11.0, 0, 10.9)
+			.add(14600 * DAY, 1.0 / 3, 2.5, 0.125, 2.0, Integer.MAX_VALUE, Double.NaN)
+			.add(14601 * DAY, 99.99, 100.0, 98.0, 99.0, 1200, 99.0)
+			.add(-10000 * DAY, 0.0, 0.0, 0.0, 0.0, 1, -0.0).build();
+	private final HistoricSeries aaa = new HistoricSeries.Builder("AMEX", "AAA").add(14000 * DAY, 1, 2, 0.5, 1.5, 7,
+			1.5).build();
+
+	// Oldest first, so the deltas after the first are positive
+	private final List<Dividend> elgDividends = Arrays.asList(new Dividend("AMEX", "ELG", new Date(-400 * DAY), 0.05),
+			new Dividend("AMEX", "ELG", new Date(14000 * DAY), 0.1), new Dividend("AMEX", "ELG", new Date(14500 * DAY),
+					0.125));
+
+	@Test
+	public void roundTripsWithEveryCompressionAndReadMode() throws IOException {
+		for (SnapshotCompression compression : SnapshotCompression.values()) {
+			File file = write(compression);
+			for (long windowSize : WINDOW_SIZES) {
+				String mode = mode(compression, windowSize);
+				SnapshotReader reader = reader(file, windowSize);
+				try {
+					assertTrue(mode, reader.next());
+					assertTrue(mode, reader.isHistoricData());
+					assertSeriesEquals(mode, elg, reader.readHistoricData());
+
+					assertTrue(mode, reader.next());
+					assertTrue(mode, reader.isDividends());
+					assertDividendsEqual(mode, elgDividends, reader.readDividends());
+
+					assertTrue(mode, reader.next());
+					assertSeriesEquals(mode, aaa, reader.readHistoricData());
+
+					assertFalse(mode, reader.next());
+				} finally {
+					reader.close();
+				}
+			}
+		}
+	}
+
+	@Test
+	public void skipsBlocksOfTheOtherKind() throws IOException {
+		for (SnapshotCompression compression : SnapshotCompression.values()) {
+			File file = write(compression);
+			for (long windowSize : WINDOW_SIZES) {
+				String mode = mode(compression, windowSize);
+
+				SnapshotReader reader = reader(file, windowSize);
+				int series = 0;
+				while (reader.next()) {
+					if (reader.isHistoricData()) {
+						HistoricSeries read = reader.readHistoricData();
+						assertSeriesEquals(mode, series == 0 ? elg : aaa, read);
+						series++;
+					}
+				}
+				reader.close();
+				assertEquals(mode, 2, series);
+
+				reader = reader(file, windowSize);
+				int dividends = 0;
+				while (reader.next()) {
+					if (reader.isDividends()) {
+						assertDividendsEqual(mode, elgDividends, reader.readDividends());
+						dividends++;
+					}
+				}
+				reader.close();
+				assertEquals(mode, 1, dividends);
+			}
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsAFileThatIsNotASnapshot() throws IOException {
+		File file = folder.newFile("not.snapshot");
+		Files.write(file.toPath(), "Date,Open,High\n".getBytes("US-ASCII"));
+		new SnapshotReader(file, false);
+	}
+
+	@Test
+	public void rejectsAnUnknownCompression() throws IOException {
+		File file = write(SnapshotCompression.NONE);
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		bytes[8] = 7;
+		Files.write(file.toPath(), bytes);
+
+		for (long windowSize : WINDOW_SIZES) {
+			try {
+				reader(file, windowSize);
+				fail("Opened a snapshot with compression 7");
+			} catch (IOException expected) {
+				assertTrue(expected.getMessage(), expected.getMessage().contains(file.getName()));
+			}
+		}
+	}
+
+	@Test
+	public void failsOnATruncatedSnapshot() throws IOException {
+		for (SnapshotCompression compression : SnapshotCompression.values()) {
+			File file = write(compression);
+			byte[] bytes = Files.readAllBytes(file.toPath());
+			Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length - 20));
+
+			for (long windowSize : WINDOW_SIZES) {
+				SnapshotReader reader = reader(file, windowSize);
+				try {
+					while (reader.next()) {
+						if (reader.isHistoricData()) {
+							reader.readHistoricData();
+						} else {
+							reader.readDividends();
+						}
+					}
+					fail("Read a truncated " + mode(compression, windowSize) + " snapshot to the end");
+				} catch (EOFException expected) {
+					assertTrue(expected.getMessage(), expected.getMessage().contains(file.getName()));
+				} finally {
+					reader.close();
+				}
+			}
+		}
+	}
+
+	private static SnapshotReader reader(File file, long windowSize) throws IOException {
+		return windowSize == 0 ? new SnapshotReader(file, false) : new SnapshotReader(file, true, windowSize);
+	}
+
+	private static String mode(SnapshotCompression compression, long windowSize) {
+		return compression + (windowSize == 0 ? " stream" : " mapped in " + windowSize + " byte windows");
+	}
+
+	private File write(SnapshotCompression compression) throws IOException {
+		File file = folder.newFile(compression + ".snapshot");
+		SnapshotWriter writer = new SnapshotWriter(file, compression);
+		writer.writeHistoricData(elg);
+		writer.writeDividends(elgDividends);
+		writer.writeHistoricData(aaa);
+		writer.close();
+		return file;
+	}
+
+	private static void assertSeriesEquals(String mode, HistoricSeries expected, HistoricSeries actual) {
+		assertEquals(mode, expected.getExchange(), actual.getExchange());
+		assertEquals(mode, expected.getSymbol(), actual.getSymbol());
+		assertEquals(mode, expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(mode, expected.getDate(i), actual.getDate(i));
+			assertEquals(mode, expected.getOpen(i), actual.getOpen(i), 0);
+			assertEquals(mode, expected.getHigh(i), actual.getHigh(i), 0);
+			assertEquals(mode, expected.getLow(i), actual.getLow(i), 0);
+			assertEquals(mode, expected.getClose(i), actual.getClose(i), 0);
+			assertEquals(mode, expected.getVolume(i), actual.getVolume(i));
+			assertEquals(mode, expected.getAdjClose(i), actual.getAdjClose(i), 0);
+		}
+	}
+
+	private static void assertDividendsEqual(String mode, List<Dividend> expected, List<Dividend> actual) {
+		assertEquals(mode, expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(mode, expected.get(i).getExchange(), actual.get(i).getExchange());
+			assertEquals(mode, expected.get(i).getSymbol(), actual.get(i).getSymbol());
+			assertEquals(mode, expected.get(i).getDate(), actual.get(i).getDate());
+			assertEquals(mode, expected.get(i).getDividend(), actual.get(i).getDividend(), 0);
+		}
+	}
+}